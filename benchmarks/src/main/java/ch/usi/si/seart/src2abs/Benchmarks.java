@@ -0,0 +1,23 @@
+package ch.usi.si.seart.src2abs;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/*
+ * Runs the benchmarks with the usual JMH command line options, and always
+ * reports the allocation rate alongside the throughput.
+ */
+public class Benchmarks {
+
+	public static void main(String[] args) throws Exception {
+		CommandLineOptions arguments = new CommandLineOptions(args);
+		Options options = new OptionsBuilder()
+				.parent(arguments)
+				.addProfiler(GCProfiler.class)
+				.build();
+		new Runner(options).run();
+	}
+}
@@ -0,0 +1,75 @@
+package ch.usi.si.seart.src2abs;
+
+import lombok.SneakyThrows;
+import lombok.experimental.UtilityClass;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/*
+ * The inputs of the benchmarks. The small and medium inputs are bundled as
+ * resources, while the large ones are assembled from many copies of the
+ * medium ones, so as to not bloat the repository.
+ */
+@UtilityClass
+class Corpus {
+
+	private static final int COPIES = 60;
+
+	public String read(Parser.Granularity granularity, String size) {
+		String prefix = granularity.name().toLowerCase();
+		if (!size.equals("large")) return resource(prefix + "-" + size + ".java");
+		String medium = resource(prefix + "-medium.java");
+		return granularity == Parser.Granularity.METHOD ? largeMethod(medium) : largeClass(medium);
+	}
+
+	public Set<String> idioms(String name) {
+		switch (name) {
+			case "none":
+				return Set.of();
+			case "common":
+				return Arrays.stream(resource("idioms.txt").split("\n"))
+						.filter(line -> !line.isEmpty())
+						.collect(Collectors.toSet());
+			default:
+				throw new IllegalArgumentException("Unknown idiom set: " + name);
+		}
+	}
+
+	// one method containing the statements of the medium method many times, each copy in its own block
+	private String largeMethod(String medium) {
+		String body = medium.substring(medium.indexOf('{') + 1, medium.lastIndexOf('}'));
+		StringBuilder builder = new StringBuilder(body.length() * COPIES);
+		builder.append(medium, 0, medium.indexOf('{') + 1).append('\n');
+		for (int i = 0; i < COPIES; i++) {
+			builder.append("    {").append(body).append("    }\n");
+		}
+		return builder.append("}\n").toString();
+	}
+
+	// one compilation unit containing many renamed copies of the medium class as nested classes
+	private String largeClass(String medium) {
+		int declaration = medium.indexOf("public class ");
+		String header = medium.substring(0, declaration);
+		String type = medium.substring(declaration + "public class ".length()).split("[^A-Za-z0-9_]", 2)[0];
+		String body = medium.substring(declaration).replace("public class ", "public static class ");
+		StringBuilder builder = new StringBuilder(body.length() * COPIES);
+		builder.append(header).append("public class Large {\n");
+		for (int i = 0; i < COPIES; i++) {
+			builder.append(body.replace(type, type + i)).append('\n');
+		}
+		return builder.append("}\n").toString();
+	}
+
+	@SneakyThrows(IOException.class)
+	private String resource(String name) {
+		try (InputStream stream = Corpus.class.getResourceAsStream("/corpus/" + name)) {
+			if (stream == null) throw new IllegalArgumentException("Missing corpus file: " + name);
+			return new String(stream.readAllBytes(), StandardCharsets.UTF_8);
+		}
+	}
+}
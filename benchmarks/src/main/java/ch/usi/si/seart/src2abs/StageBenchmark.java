@@ -0,0 +1,119 @@
+package ch.usi.si.seart.src2abs;
+
+import com.github.javaparser.JavaParser;
+import com.github.javaparser.ParserConfiguration;
+import com.github.javaparser.ast.Node;
+import org.antlr.v4.runtime.Token;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Measures each stage of the abstraction separately, followed by the
+ * complete pipeline. The stages are fed the output of the previous ones,
+ * computed once before the measurements start.
+ */
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class StageBenchmark {
+
+	@State(Scope.Thread)
+	public static class Input {
+
+		@Param({"METHOD", "CLASS"})
+		Parser.Granularity granularity;
+
+		@Param({"small", "medium", "large"})
+		String size;
+
+		String original;
+		String cleaned;
+		JavaParser javaParser;
+		Parser parser;
+		List<Token> tokens;
+
+		@Setup
+		public void setUp() {
+			original = Corpus.read(granularity, size);
+			cleaned = Cleaner.clean(original);
+			javaParser = new JavaParser(new ParserConfiguration());
+			parser = new Parser(granularity, javaParser);
+			parser.parse(cleaned);
+			tokens = Tokenizer.readTokens(cleaned);
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class Idioms {
+
+		@Param({"none", "common"})
+		String idioms;
+
+		Set<String> set;
+
+		@Setup
+		public void setUp() {
+			set = Corpus.idioms(idioms);
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class Pipeline {
+
+		@Param({"ANTLR", "JAVAPARSER"})
+		Tokenizer.Lexing lexing;
+
+		Abstractor abstractor;
+
+		@Setup
+		public void setUp(Input input, Idioms idioms) {
+			abstractor = Abstractor.builder()
+					.granularity(input.granularity)
+					.idioms(idioms.set)
+					.lexing(lexing)
+					.build();
+		}
+	}
+
+	@Benchmark
+	public String clean(Input input) {
+		return Cleaner.clean(input.original);
+	}
+
+	@Benchmark
+	public Node parse(Input input) {
+		Parser parser = new Parser(input.granularity, input.javaParser);
+		parser.parse(input.cleaned);
+		return parser.getNode();
+	}
+
+	@Benchmark
+	public List<Token> readTokens(Input input) {
+		return Tokenizer.readTokens(input.cleaned);
+	}
+
+	@Benchmark
+	public String tokenize(Input input, Idioms idioms) {
+		return new Tokenizer(input.parser, idioms.set).tokenize(input.tokens);
+	}
+
+	@Benchmark
+	public Abstractor.Result abstractCode(Input input, Pipeline pipeline) {
+		return pipeline.abstractor.abstractCode(input.original);
+	}
+}
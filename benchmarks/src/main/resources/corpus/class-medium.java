@@ -0,0 +1,175 @@
+/*
+ * A bounded, thread-safe cache with least-recently-used eviction.
+ */
+package org.example.cache;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+public class LruCache<K, V> implements Cache<K, V> {
+
+    private static final Logger LOGGER = Logger.getLogger(LruCache.class.getName());
+    private static final int DEFAULT_CAPACITY = 1024;
+    private static final float LOAD_FACTOR = 0.75f;
+
+    private final int capacity;
+    private final Duration timeToLive;
+    private final Clock clock;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<K, Entry<V>> entries;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public LruCache() {
+        this(DEFAULT_CAPACITY, Duration.ofMinutes(10), Clock.systemUTC());
+    }
+
+    public LruCache(int capacity, Duration timeToLive, Clock clock) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        this.timeToLive = Objects.requireNonNull(timeToLive, "timeToLive");
+        this.clock = Objects.requireNonNull(clock, "clock");
+        this.entries = new LinkedHashMap<K, Entry<V>>(capacity, LOAD_FACTOR, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+                boolean evict = size() > LruCache.this.capacity;
+                if (evict) {
+                    evictions++;
+                    LOGGER.log(Level.FINEST, "Evicting {0}", eldest.getKey());
+                }
+                return evict;
+            }
+        };
+    }
+
+    @Override
+    public Optional<V> get(K key) {
+        lock.writeLock().lock();
+        try {
+            Entry<V> entry = entries.get(key);
+            if (entry == null) {
+                misses++;
+                return Optional.empty();
+            }
+            if (entry.isExpired(clock.instant())) {
+                entries.remove(key);
+                misses++;
+                return Optional.empty();
+            }
+            hits++;
+            return Optional.of(entry.value);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public V computeIfAbsent(K key, Function<? super K, ? extends V> loader) {
+        Optional<V> cached = get(key);
+        if (cached.isPresent()) {
+            return cached.get();
+        }
+        V value = loader.apply(key);
+        put(key, value);
+        return value;
+    }
+
+    @Override
+    public void put(K key, V value) {
+        Objects.requireNonNull(key, "key");
+        Objects.requireNonNull(value, "value");
+        Instant expiry = clock.instant().plus(timeToLive);
+        lock.writeLock().lock();
+        try {
+            entries.put(key, new Entry<>(value, expiry));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean invalidate(K key) {
+        lock.writeLock().lock();
+        try {
+            return entries.remove(key) != null;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int purgeExpired() {
+        Instant now = clock.instant();
+        int purged = 0;
+        lock.writeLock().lock();
+        try {
+            Iterator<Map.Entry<K, Entry<V>>> iterator = entries.entrySet().iterator();
+            while (iterator.hasNext()) {
+                if (iterator.next().getValue().isExpired(now)) {
+                    iterator.remove();
+                    purged++;
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        return purged;
+    }
+
+    public List<K> keys() {
+        lock.readLock().lock();
+        try {
+            return Collections.unmodifiableList(new ArrayList<>(entries.keySet()));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public double hitRatio() {
+        lock.readLock().lock();
+        try {
+            long requests = hits + misses;
+            return requests == 0 ? 1.0 : (double) hits / requests;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("LruCache[size=%d, capacity=%d, hits=%d, misses=%d, evictions=%d]",
+                entries.size(), capacity, hits, misses, evictions);
+    }
+
+    private static final class Entry<V> {
+
+        private final V value;
+        private final Instant expiry;
+
+        private Entry(V value, Instant expiry) {
+            this.value = value;
+            this.expiry = expiry;
+        }
+
+        private boolean isExpired(Instant now) {
+            return !now.isBefore(expiry);
+        }
+    }
+}
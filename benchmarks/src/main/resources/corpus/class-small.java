@@ -0,0 +1,43 @@
+package org.example.geometry;
+
+import java.util.Objects;
+
+/**
+ * An immutable point in the plane.
+ */
+public final class Point implements Comparable<Point> {
+
+    public static final Point ORIGIN = new Point(0, 0);
+
+    private final double x;
+    private final double y;
+
+    public Point(double x, double y) {
+        this.x = x;
+        this.y = y;
+    }
+
+    public double distanceTo(Point other) {
+        double dx = x - other.x;
+        double dy = y - other.y;
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+
+    @Override
+    public int compareTo(Point other) {
+        return Double.compare(distanceTo(ORIGIN), other.distanceTo(ORIGIN));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof Point)) return false;
+        Point point = (Point) o;
+        return Double.compare(point.x, x) == 0 && Double.compare(point.y, y) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(x, y);
+    }
+}
@@ -0,0 +1,32 @@
+public static Map<String, List<Integer>> indexWords(Path path, Set<String> stopWords) throws IOException {
+    Map<String, List<Integer>> index = new TreeMap<>();
+    List<String> lines = Files.readAllLines(path, StandardCharsets.UTF_8);
+    int lineNumber = 0;
+    for (String line : lines) {
+        lineNumber++;
+        if (line.isBlank() || line.startsWith("#")) {
+            continue;
+        }
+        String[] words = line.toLowerCase(Locale.ROOT).split("[^a-z0-9']+");
+        for (int i = 0; i < words.length; i++) {
+            String word = words[i].trim();
+            if (word.length() < 3 || stopWords.contains(word)) {
+                continue;
+            }
+            // keep every occurrence, duplicates included
+            index.computeIfAbsent(word, key -> new ArrayList<>()).add(lineNumber);
+        }
+    }
+    long total = 0L;
+    for (Map.Entry<String, List<Integer>> entry : index.entrySet()) {
+        total += entry.getValue().size();
+    }
+    double average = index.isEmpty() ? 0.0 : (double) total / index.size();
+    if (average > 2.5d) {
+        LOGGER.log(Level.FINE, "Average of {0} occurrences per word in {1}", new Object[]{average, path});
+    }
+    char separator = File.separatorChar;
+    String name = path.toString().substring(path.toString().lastIndexOf(separator) + 1);
+    System.out.printf("Indexed %d words from %s%n", index.size(), name);
+    return Collections.unmodifiableMap(index);
+}
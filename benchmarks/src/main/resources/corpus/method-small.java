@@ -0,0 +1,4 @@
+@Override
+public String toString() {
+    return getClass().getSimpleName() + "[name=" + name + ", size=" + size + "]";
+}
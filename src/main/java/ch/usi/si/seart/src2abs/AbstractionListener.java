@@ -0,0 +1,20 @@
+package ch.usi.si.seart.src2abs;
+
+/**
+ * Receives the {@link Measurement} of every abstraction performed by an
+ * {@link Abstractor}. Listeners are invoked on the thread that performed the
+ * abstraction, and must therefore be thread-safe if the abstractor is shared.
+ *
+ * @see Metrics
+ */
+public interface AbstractionListener {
+
+	void completed(Measurement measurement);
+
+	/**
+	 * @param measurement the stages reached before the failure
+	 * @param cause the exception the abstraction failed with
+	 */
+	default void failed(Measurement measurement, RuntimeException cause) {
+	}
+}
@@ -1,39 +1,161 @@
 package ch.usi.si.seart.src2abs;
 
+import com.github.javaparser.JavaParser;
+import com.github.javaparser.ParseProblemException;
+import com.github.javaparser.ParserConfiguration;
+import com.github.javaparser.Position;
+import com.github.javaparser.Range;
+import com.github.javaparser.ast.body.CallableDeclaration;
 import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
 import lombok.Getter;
 import lombok.SneakyThrows;
 import lombok.experimental.FieldDefaults;
-import lombok.experimental.UtilityClass;
+import org.antlr.v4.runtime.ListTokenSource;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.TokenSource;
 
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
 
-@UtilityClass
+/**
+ * Transforms source code into its abstract textual representation.
+ * <p>
+ * Instances are immutable and can be shared between threads: every thread
+ * that uses an instance gets its own {@link JavaParser}, so the only state
+ * shared between concurrent invocations is the read-only configuration.
+ * The {@link ParserConfiguration} supplied to the builder must therefore not
+ * be modified once the instance has been built.
+ * <p>
+ * A timeout, a maximum length and a maximum number of tokens can be set to
+ * guard against pathological inputs. Inputs that exceed any of them fail
+ * with a {@link SkippedException} instead of tying up the calling thread.
+ * <p>
+ * Code that can not be parsed is abstracted nonetheless if the parsing mode
+ * is {@link Parser.Parsing#FALLBACK FALLBACK}, in which case its identifiers
+ * are classified from their surrounding tokens alone. The
+ * {@link Parser.Parsing#HEURISTIC HEURISTIC} mode always does so, which is
+ * much faster than parsing, but may classify some identifiers differently.
+ * <p>
+ * The mapping written next to an abstracted file is made of two comma-separated
+ * lines by default, or is written by a {@link MappingWriter} if the mapping
+ * format is {@link MappingWriter.Format#BINARY BINARY}.
+ * <p>
+ * Compilation units at least as long as the split threshold, if set, are
+ * parsed with the members of their top-level classes and interfaces split
+ * across the threads of the common fork-join pool, so that a single large
+ * unit, such as a generated parser, does not hold up a batch on one thread.
+ * The result is the same as parsing the unit at once, which is done instead
+ * whenever the unit can not be split. Splitting only applies at
+ * {@link Parser.Granularity#CLASS CLASS} granularity when lexing with ANTLR.
+ * <p>
+ * Batches whose results are kept in memory can share a {@link SymbolTable},
+ * so that their mappings hold a single instance of each identifier and literal.
+ * <p>
+ * The static {@code abstractCode} methods remain as a convenience for
+ * one-off invocations.
+ */
+@Getter
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
 public class Abstractor {
 
+	/*
+	 * Files at least this large are memory-mapped and decoded straight into
+	 * a CharBuffer, rather than being read into a byte array first.
+	 */
+	private static final long MAPPING_THRESHOLD = 1L << 20;
+
+	Parser.Granularity granularity;
+	Set<String> idioms;
+	Tokenizer.Lexing lexing;
+	Parser.Parsing parsing;
+	ParserConfiguration configuration;
+	ResultCache cache;
+	AbstractionListener listener;
+	Duration timeout;
+	int maxLength;
+	int maxTokens;
+	MappingWriter.Format mappingFormat;
+	SymbolTable symbols;
+	int splitThreshold;
+
+	@Getter(AccessLevel.NONE)
+	ThreadLocal<JavaParser> parsers;
+
+	@Getter(AccessLevel.NONE)
+	byte[] fingerprint;
+
+	@Builder(toBuilder = true)
+	private Abstractor(
+			Parser.Granularity granularity,
+			Set<String> idioms,
+			Tokenizer.Lexing lexing,
+			Parser.Parsing parsing,
+			ParserConfiguration configuration,
+			ResultCache cache,
+			AbstractionListener listener,
+			Duration timeout,
+			Integer maxLength,
+			Integer maxTokens,
+			MappingWriter.Format mappingFormat,
+			SymbolTable symbols,
+			Integer splitThreshold
+	) {
+		this.granularity = granularity != null ? granularity : Parser.Granularity.CLASS;
+		this.idioms = idioms != null ? Set.copyOf(idioms) : Set.of();
+		this.lexing = lexing != null ? lexing : Tokenizer.Lexing.ANTLR;
+		this.parsing = parsing != null ? parsing : Parser.Parsing.JAVAPARSER;
+		this.configuration = configuration != null ? configuration : new ParserConfiguration();
+		if (this.lexing == Tokenizer.Lexing.JAVAPARSER && !this.configuration.isStoreTokens())
+			throw new IllegalArgumentException("Lexing with JavaParser requires the parser to store tokens");
+		this.parsers = ThreadLocal.withInitial(() -> new JavaParser(this.configuration));
+		this.cache = cache;
+		this.listener = listener;
+		this.timeout = timeout != null ? timeout : Duration.ZERO;
+		this.maxLength = maxLength != null ? maxLength : 0;
+		this.maxTokens = maxTokens != null ? maxTokens : 0;
+		this.mappingFormat = mappingFormat != null ? mappingFormat : MappingWriter.Format.CSV;
+		this.symbols = symbols;
+		this.splitThreshold = splitThreshold != null ? splitThreshold : 0;
+		if (this.splitThreshold < 0) throw new IllegalArgumentException("Split threshold must not be negative");
+		if (this.timeout.isNegative() || this.maxLength < 0 || this.maxTokens < 0)
+			throw new IllegalArgumentException("Limits must not be negative");
+		this.fingerprint = cache != null
+				? ResultCache.fingerprint(this.granularity, this.lexing, this.parsing, this.configuration, this.idioms)
+				: null;
+	}
+
 	@Getter
+	@AllArgsConstructor(access = AccessLevel.PACKAGE)
 	@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
 	public static class Result {
 
 		String abstracted;
 		Map<String, String> mapping;
 
-		private Result(Parser.Granularity granularity, String original, Set<String> idioms) {
-			String cleaned = cleanCode(original);
-			Parser parser = new Parser(granularity);
-			parser.parse(cleaned);
-			Tokenizer tokenizer = new Tokenizer(parser, idioms);
-			this.abstracted = tokenizer.tokenize(cleaned);
-			this.mapping = tokenizer.export();
-		}
+		@Getter(AccessLevel.PACKAGE)
+		String[][] originals;
 
 		public Collection<String> mappingKeys() {
 			return this.mapping.keySet();
@@ -43,71 +165,489 @@ public class Abstractor {
 			return this.mapping.values();
 		}
 
+		/**
+		 * @return a de-abstractor for code abstracted with the IDs of this result,
+		 *         including those missing from the mapping because their identifier
+		 *         was also replaced by an ID of another family
+		 */
+		public Deabstractor deabstractor() {
+			return new Deabstractor(originals);
+		}
+
+		/**
+		 * Writes the abstraction followed by its mappings, in the same format as {@link #toString()}.
+		 *
+		 * @param out the destination of the result
+		 * @throws IOException if writing to the destination fails
+		 */
+		public void writeTo(Appendable out) throws IOException {
+			out.append(abstracted);
+			writeMapping(mapping, out);
+		}
+
 		@Override
+		@SneakyThrows(IOException.class)
 		public String toString() {
-			StringBuilder builder = new StringBuilder(abstracted);
-			if (!mapping.isEmpty()) {
-				builder.append('\n');
-				builder.append('\n');
-				mapping.forEach((key, value) ->
-						builder.append(value)
-								.append(' ')
-								.append('=')
-								.append(' ')
-								.append(key)
-								.append('\n')
-				);
-			}
+			StringBuilder builder = new StringBuilder(abstracted.length());
+			writeTo(builder);
 			return builder.toString();
 		}
+	}
+
+	/**
+	 * The abstractions of several versions of the same code, which share a single mapping.
+	 */
+	@Getter
+	@AllArgsConstructor(access = AccessLevel.PACKAGE)
+	@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+	public static class VersionsResult {
+
+		List<String> abstracted;
+		Map<String, String> mapping;
+
+		@Getter(AccessLevel.NONE)
+		String[][] originals;
+
+		/**
+		 * @param version the index of the version, in the order they were given
+		 * @return the abstraction of the version
+		 */
+		public String getAbstracted(int version) {
+			return abstracted.get(version);
+		}
+
+		/**
+		 * @return a de-abstractor for code abstracted with the IDs of these versions
+		 * @see Result#deabstractor()
+		 */
+		public Deabstractor deabstractor() {
+			return new Deabstractor(originals);
+		}
+	}
+
+	/**
+	 * The abstraction of a single method or constructor, extracted from a compilation unit.
+	 */
+	@Getter
+	@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+	public static class MethodResult extends Result {
+
+		String signature;
+		Range range;
+
+		private MethodResult(String abstracted, String[][] originals, String signature, Range range) {
+			super(abstracted, Tokenizer.mapping(originals), originals);
+			this.signature = signature;
+			this.range = range;
+		}
+	}
+
+	public Result abstractCode(CharSequence original) {
+		StringBuilder abstracted = new StringBuilder(original.length() / 2);
+		String[][] originals = abstractInto(original, abstracted);
+		return new Result(abstracted.toString(), Tokenizer.mapping(originals), originals);
+	}
+
+	/**
+	 * Writes the abstraction of the source code to the destination as it is
+	 * being produced, without buffering the complete result in memory first.
+	 * If a cache is configured, the abstraction is written once complete.
+	 *
+	 * @param original the source code to abstract
+	 * @param abstracted the destination of the abstracted code
+	 * @return the mapping of the original identifiers and literals to their IDs
+	 * @throws SkippedException if the source code exceeds one of the configured limits,
+	 *                          in which case the abstraction may have been partially written
+	 */
+	public Map<String, String> abstractCode(CharSequence original, Appendable abstracted) {
+		return Tokenizer.mapping(abstractInto(original, abstracted));
+	}
+
+	@SneakyThrows(IOException.class)
+	private String[][] abstractInto(CharSequence original, Appendable abstracted) {
+		Measurement measurement = listener != null ? new Measurement(original.length()) : null;
+		try {
+			Guard guard = guard(original);
+			String cleaned = Cleaner.clean(original);
+			if (measurement != null) measurement.lap(Measurement.Stage.CLEAN);
+			guard.checkDeadline();
+			String[][] originals;
+			if (cache == null) {
+				originals = abstractCleaned(cleaned, abstracted, measurement, guard);
+			} else {
+				Result result = cached(cleaned, measurement, guard);
+				abstracted.append(result.getAbstracted());
+				originals = result.getOriginals();
+			}
+			if (measurement != null) listener.completed(measurement.finish(false));
+			return originals;
+		} catch (RuntimeException ex) {
+			if (measurement != null) listener.failed(measurement.finish(true), ex);
+			throw ex;
+		}
+	}
 
-		private static String cleanCode(String sourceCode) {
-			Pattern pattern = Pattern.compile("(\".+\")");
-			Matcher matcher = pattern.matcher(sourceCode);
+	private Result cached(String cleaned, Measurement measurement, Guard guard) {
+		ResultCache.Key key = ResultCache.key(fingerprint, cleaned);
+		Result result = cache.get(key);
+		if (result == null) {
+			StringBuilder abstracted = new StringBuilder(cleaned.length() / 2);
+			String[][] originals = abstractCleaned(cleaned, abstracted, measurement, guard);
+			result = new Result(abstracted.toString(), Collections.unmodifiableMap(Tokenizer.mapping(originals)), originals);
+			cache.put(key, result);
+		} else if (measurement != null) {
+			measurement.cached();
+		}
+		return result;
+	}
 
-			String group;
-			String okGroup;
-			while (matcher.find()) {
-				for (int i = 0; i <= matcher.groupCount(); i++) {
-					group = matcher.group(i);
-					// okGroup = group.replaceAll("@", "<AT>");
-					okGroup = group.replaceAll("//", "<DOUBLE_SLASH>");
-					sourceCode = sourceCode.replace(group, okGroup);
+	private String[][] abstractCleaned(
+			String cleaned, Appendable abstracted, Measurement measurement, Guard guard
+	) {
+		Parser parser = null;
+		List<Token> lexed = null;
+		if (parsing != Parser.Parsing.HEURISTIC) {
+			parser = new Parser(granularity, parsers.get(), guard);
+			try {
+				if (splits(cleaned)) {
+					// the tokens delimit the members, and are abstracted below rather than lexed again
+					lexed = Tokenizer.readTokens(cleaned);
+					if (measurement != null) measurement.lap(Measurement.Stage.LEX);
+					guard.checkDeadline();
+					if (!parser.parseSplit(cleaned, lexed, ForkJoinPool.commonPool())) parser.parse(cleaned);
+				} else {
+					parser.parse(cleaned);
 				}
+			} catch (ParseProblemException ex) {
+				if (parsing != Parser.Parsing.FALLBACK) throw ex;
+				parser = null;
+			} finally {
+				if (measurement != null) measurement.lap(Measurement.Stage.PARSE);
 			}
+		}
+		if (parser == null) return abstractHeuristically(cleaned, lexed, abstracted, measurement, guard);
+		TokenSource tokens;
+		if (lexed != null) {
+			tokens = new ListTokenSource(lexed);
+		} else if (lexing == Tokenizer.Lexing.JAVAPARSER) {
+			tokens = new JavaTokenSource(parser.getNode());
+		} else {
+			tokens = Tokenizer.lex(cleaned);
+		}
+		tokens = guard.source(tokens);
+		if (measurement != null) tokens = measurement.source(tokens);
+		return tokenize(new Tokenizer(parser, idioms), tokens, abstracted, measurement);
+	}
 
-			sourceCode = sourceCode.replaceAll("(?:/\\*(?:[^*]|(?:\\*+[^*/]))*\\*+/)|(?://.*)", "");
-			// sourceCode = sourceCode.replaceAll("@.+", "");
+	/*
+	 * Whether the compilation unit is large enough to be parsed in parallel.
+	 * Only the tokens of the Lexer tell where the members are.
+	 */
+	private boolean splits(String cleaned) {
+		return splitThreshold > 0 && cleaned.length() >= splitThreshold
+				&& granularity == Parser.Granularity.CLASS && lexing == Tokenizer.Lexing.ANTLR;
+	}
 
-			return sourceCode;
+	/*
+	 * Classifies the identifiers from the tokens, which always come from the
+	 * Lexer, as there are no tokens recorded by JavaParser to reuse. The time
+	 * spent classifying is counted as parsing. The tokens are lexed unless
+	 * they already were, but are counted by the guard either way.
+	 */
+	private String[][] abstractHeuristically(
+			String cleaned, List<Token> lexed, Appendable abstracted, Measurement measurement, Guard guard
+	) {
+		TokenSource source = lexed != null ? new ListTokenSource(lexed) : Tokenizer.lex(cleaned);
+		List<Token> tokens = Tokenizer.readTokens(guard.source(source));
+		if (measurement != null) {
+			measurement.tokens(tokens.size());
+			measurement.lap(Measurement.Stage.LEX);
+			measurement.heuristic();
 		}
+		Classifier classifier = new Classifier(tokens);
+		if (measurement != null) measurement.lap(Measurement.Stage.PARSE);
+		return tokenize(new Tokenizer(classifier, idioms), new ListTokenSource(tokens), abstracted, measurement);
 	}
 
-	@SneakyThrows(IOException.class)
-	public void abstractCode(
-			Parser.Granularity granularity, Path input, Path output, Set<String> idioms
+	private String[][] tokenize(
+			Tokenizer tokenizer, TokenSource tokens, Appendable abstracted, Measurement measurement
 	) {
-		String original = Files.readString(input);
-		Result result = new Result(granularity, original, idioms);
-		Files.write(output, result.getAbstracted().getBytes());
+		tokenizer.tokenize(tokens, abstracted);
+		String[][] originals = tokenizer.originals(symbols);
+		if (measurement != null) {
+			measurement.lap(Measurement.Stage.TOKENIZE);
+			measurement.count(tokenizer);
+		}
+		return originals;
+	}
+
+	/**
+	 * Abstracts each method of a compilation unit separately, with the same
+	 * result as abstracting its source code at {@link Parser.Granularity#METHOD}
+	 * granularity, but parsing and lexing the compilation unit only once.
+	 * The configured granularity is not used, and the compilation unit is
+	 * always parsed, as methods can not be extracted heuristically.
+	 *
+	 * @param original the source code of a compilation unit
+	 * @param constructors whether constructors are abstracted as well
+	 * @return the abstraction of each method, in the order they appear in the source code
+	 */
+	public List<MethodResult> abstractMethods(CharSequence original, boolean constructors) {
+		Guard guard = guard(original);
+		String cleaned = Cleaner.clean(original);
+		guard.checkDeadline();
+		Parser parser = new Parser(Parser.Granularity.CLASS, parsers.get(), guard);
+		List<Parser> callables = parser.parseCallables(cleaned, constructors);
+		List<Token> tokens = lexing == Tokenizer.Lexing.ANTLR && !callables.isEmpty()
+				? Tokenizer.readTokens(guard.source(Tokenizer.lex(cleaned)))
+				: List.of();
+		List<MethodResult> results = new ArrayList<>(callables.size());
+		for (Parser callable: callables) {
+			CallableDeclaration<?> declaration = (CallableDeclaration<?>) callable.getNode();
+			Range range = declaration.getRange().orElseThrow();
+			TokenSource source = lexing == Tokenizer.Lexing.JAVAPARSER
+					? guard.source(new JavaTokenSource(declaration.getTokenRange().orElseThrow()))
+					: new ListTokenSource(slice(tokens, range));
+			Tokenizer tokenizer = new Tokenizer(callable, idioms);
+			String abstracted = tokenizer.tokenize(source);
+			results.add(new MethodResult(abstracted, tokenizer.originals(symbols), declaration.getSignature().asString(), range));
+		}
+		return results;
+	}
+
+	public List<MethodResult> abstractMethods(CharSequence original) {
+		return abstractMethods(original, false);
+	}
+
+	/**
+	 * Abstracts several versions of the same code, such as the code before
+	 * and after a change, so that the identifiers and literals they have in
+	 * common get the same IDs in all of them. The versions are parsed and
+	 * lexed in parallel, and then abstracted in order through one mapping,
+	 * each with the types, methods and annotations found in it alone, so the
+	 * first version is abstracted exactly as it would be on its own. Later
+	 * versions are numbered after it, and a name that changed its kind, like
+	 * a variable that became a type, gets an ID of each family. Qualified
+	 * names of later versions are also resolved through the variables of the
+	 * earlier ones, like through their own earlier variables. The limits
+	 * apply to each version separately, while the cache and the listener are
+	 * not used.
+	 *
+	 * @param originals the source code of each version
+	 * @return the abstraction of each version, in the same order, and their mapping
+	 */
+	public VersionsResult abstractVersions(List<? extends CharSequence> originals) {
+		if (originals.isEmpty()) throw new IllegalArgumentException("No versions to abstract");
+		List<CompletableFuture<Version>> pending = new ArrayList<>(originals.size() - 1);
+		for (CharSequence original: originals.subList(1, originals.size())) {
+			pending.add(CompletableFuture.supplyAsync(() -> prepare(original)));
+		}
+		List<Version> versions = new ArrayList<>(originals.size());
+		versions.add(prepare(originals.get(0)));
+		for (CompletableFuture<Version> future: pending) {
+			try {
+				versions.add(future.join());
+			} catch (CompletionException ex) {
+				if (ex.getCause() instanceof RuntimeException) throw (RuntimeException) ex.getCause();
+				throw ex;
+			}
+		}
+		Tokenizer tokenizer = null;
+		List<String> abstracted = new ArrayList<>(versions.size());
+		for (Version version: versions) {
+			tokenizer = tokenizer == null
+					? new Tokenizer(version.types, version.methods, version.annotations, idioms)
+					: tokenizer.reclassify(version.types, version.methods, version.annotations);
+			abstracted.add(tokenizer.tokenize(version.tokens));
+		}
+		String[][] mapped = tokenizer.originals(symbols);
+		return new VersionsResult(Collections.unmodifiableList(abstracted), Tokenizer.mapping(mapped), mapped);
+	}
+
+	/**
+	 * Abstracts the code before and after a change with a shared mapping.
+	 *
+	 * @param before the source code before the change
+	 * @param after the source code after the change
+	 * @return the abstractions of both versions, in that order, and their mapping
+	 * @see #abstractVersions(List)
+	 */
+	public VersionsResult abstractPair(CharSequence before, CharSequence after) {
+		return abstractVersions(List.of(before, after));
+	}
+
+	/*
+	 * Does everything but the tokenization of a version, which is what can be
+	 * done independently of the other versions.
+	 */
+	private Version prepare(CharSequence original) {
+		Guard guard = guard(original);
+		String cleaned = Cleaner.clean(original);
+		guard.checkDeadline();
+		Parser parser = null;
+		if (parsing != Parser.Parsing.HEURISTIC) {
+			parser = new Parser(granularity, parsers.get(), guard);
+			try {
+				parser.parse(cleaned);
+			} catch (ParseProblemException ex) {
+				if (parsing != Parser.Parsing.FALLBACK) throw ex;
+				parser = null;
+			}
+		}
+		if (parser == null) {
+			List<Token> tokens = Tokenizer.readTokens(guard.source(Tokenizer.lex(cleaned)));
+			Classifier classifier = new Classifier(tokens);
+			return new Version(classifier.getTypes(), classifier.getMethods(), classifier.getAnnotations(), tokens);
+		}
+		TokenSource tokens = lexing == Tokenizer.Lexing.JAVAPARSER
+				? new JavaTokenSource(parser.getNode())
+				: Tokenizer.lex(cleaned);
+		List<Token> lexed = Tokenizer.readTokens(guard.source(tokens));
+		return new Version(parser.getTypes(), parser.getMethods(), parser.getAnnotations(), lexed);
+	}
+
+	/*
+	 * Rejects the source code if it is too long, and otherwise starts the
+	 * clock on its deadline.
+	 */
+	private Guard guard(CharSequence original) {
+		Guard.checkLength(original.length(), maxLength);
+		if (timeout.isZero() && maxTokens == 0) return Guard.NONE;
+		return new Guard(timeout.toNanos(), maxTokens);
+	}
+
+	/*
+	 * Returns the tokens starting within the range. Relies on the columns
+	 * reported by the parser counting each character once, which holds
+	 * for the default tab size of the parser configuration.
+	 */
+	private static List<Token> slice(List<Token> tokens, Range range) {
+		int from = search(tokens, range.begin);
+		int to = search(tokens, range.end.right(1));
+		return tokens.subList(from, to);
+	}
+
+	// index of the first token that does not start before the position
+	private static int search(List<Token> tokens, Position position) {
+		int low = 0;
+		int high = tokens.size();
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			Token token = tokens.get(middle);
+			int line = token.getLine();
+			int column = token.getCharPositionInLine() + 1;
+			if (line < position.line || line == position.line && column < position.column) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Writes the abstraction of the source code to the channel, followed by its
+	 * mappings, in the same format as {@link Result#toString()}. The output is
+	 * always encoded in UTF-8.
+	 *
+	 * @param original the source code to abstract
+	 * @param channel the destination of the result
+	 * @return the mapping of the original identifiers and literals to their IDs
+	 */
+	@SneakyThrows(IOException.class)
+	public Map<String, String> abstractCode(CharSequence original, WritableByteChannel channel) {
+		Writer writer = Channels.newWriter(channel, StandardCharsets.UTF_8);
+		Map<String, String> mapping = abstractCode(original, writer);
+		writeMapping(mapping, writer);
+		writer.flush();
+		return mapping;
+	}
+
+	@SneakyThrows(IOException.class)
+	public void abstractCode(Path input, Path output) {
+		CharSequence original = readSource(input);
+		String[][] originals;
+		try (Writer writer = Files.newBufferedWriter(output, StandardCharsets.UTF_8)) {
+			originals = abstractInto(original, writer);
+		} catch (RuntimeException | StackOverflowError ex) {
+			// do not leave behind a partially written abstraction
+			Files.deleteIfExists(output);
+			throw ex;
+		}
 		Path mapping = output.resolveSibling(output.getFileName() + ".map");
-		String keys = String.join(",", result.mappingKeys());
-		String values = String.join(",", result.mappingValues());
-		Files.write(mapping, List.of(keys, values));
+		if (mappingFormat == MappingWriter.Format.BINARY) {
+			try (MappingWriter writer = new MappingWriter(mapping)) {
+				writer.write(originals);
+			}
+			return;
+		}
+		Map<String, String> result = Tokenizer.mapping(originals);
+		try (Writer writer = Files.newBufferedWriter(mapping, StandardCharsets.UTF_8)) {
+			writer.append(String.join(",", result.keySet())).append('\n');
+			writer.append(String.join(",", result.values())).append('\n');
+		}
 	}
 
 	@SneakyThrows(IOException.class)
-	public void abstractCode(
+	public void abstractCode(Path input) {
+		CharSequence original = readSource(input);
+		Writer writer = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+		Map<String, String> mapping = abstractCode(original, writer);
+		writeMapping(mapping, writer);
+		writer.flush();
+	}
+
+	public static void abstractCode(
+			Parser.Granularity granularity, Path input, Path output, Set<String> idioms
+	) {
+		builder().granularity(granularity).idioms(idioms).build().abstractCode(input, output);
+	}
+
+	public static void abstractCode(
 			Parser.Granularity granularity, Path input, Set<String> idioms
 	) {
-		String original = Files.readString(input);
-		Result result = new Result(granularity, original, idioms);
-		System.out.print(result);
+		builder().granularity(granularity).idioms(idioms).build().abstractCode(input);
 	}
 
-	public Result abstractCode(
+	public static Result abstractCode(
 			Parser.Granularity granularity, String original, Set<String> idioms
 	) {
-		return new Result(granularity, original, idioms);
+		return builder().granularity(granularity).idioms(idioms).build().abstractCode(original);
+	}
+
+	private static void writeMapping(Map<String, String> mapping, Appendable out) throws IOException {
+		if (mapping.isEmpty()) return;
+		out.append('\n');
+		out.append('\n');
+		for (Map.Entry<String, String> entry: mapping.entrySet()) {
+			out.append(entry.getValue())
+					.append(' ')
+					.append('=')
+					.append(' ')
+					.append(entry.getKey())
+					.append('\n');
+		}
+	}
+
+	private static CharSequence readSource(Path input) throws IOException {
+		try (FileChannel channel = FileChannel.open(input, StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (size < MAPPING_THRESHOLD) return Files.readString(input);
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+			return StandardCharsets.UTF_8.newDecoder().decode(buffer);
+		}
+	}
+
+	/*
+	 * A version of the code, parsed (or classified) and lexed, but not yet tokenized.
+	 */
+	@AllArgsConstructor
+	@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+	private static final class Version {
+
+		Set<String> types;
+		Set<String> methods;
+		Set<String> annotations;
+		List<Token> tokens;
 	}
 }
@@ -0,0 +1,83 @@
+package ch.usi.si.seart.src2abs;
+
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.IntStream;
+import org.antlr.v4.runtime.misc.Interval;
+
+/*
+ * A CharStream that reads directly from a CharSequence (e.g. a String or a
+ * CharBuffer), instead of copying its contents into a buffer of its own the
+ * way ANTLRInputStream does. Mirrors the semantics of ANTLRInputStream.
+ */
+@RequiredArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+class CharSequenceStream implements CharStream {
+
+	CharSequence data;
+
+	@NonFinal
+	int index = 0;
+
+	@Override
+	public void consume() {
+		if (index >= data.length()) {
+			throw new IllegalStateException("cannot consume EOF");
+		}
+		index++;
+	}
+
+	@Override
+	public int LA(int i) {
+		if (i == 0) return 0;
+		if (i < 0) i++;
+		int position = index + i - 1;
+		if (position < 0 || position >= data.length()) return IntStream.EOF;
+		return data.charAt(position);
+	}
+
+	@Override
+	public int mark() {
+		return -1;
+	}
+
+	@Override
+	public void release(int marker) {
+	}
+
+	@Override
+	public int index() {
+		return index;
+	}
+
+	@Override
+	public void seek(int index) {
+		this.index = Math.min(index, data.length());
+	}
+
+	@Override
+	public int size() {
+		return data.length();
+	}
+
+	@Override
+	public String getSourceName() {
+		return IntStream.UNKNOWN_SOURCE_NAME;
+	}
+
+	@Override
+	public String getText(Interval interval) {
+		int start = interval.a;
+		int stop = Math.min(interval.b, data.length() - 1);
+		if (start >= data.length()) return "";
+		return data.subSequence(start, stop + 1).toString();
+	}
+
+	@Override
+	public String toString() {
+		return data.toString();
+	}
+}
@@ -0,0 +1,392 @@
+package ch.usi.si.seart.src2abs;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+import org.antlr.v4.runtime.Token;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/*
+ * Collects the same names as the Parser, but from the tokens of the source
+ * code alone, so that code which can not be parsed (or need not be) can still
+ * be abstracted. Identifiers are classified by their local context: names
+ * followed by a parenthesis are methods, while names following 'new',
+ * 'instanceof', 'extends', 'implements' or 'throws', names within type
+ * arguments, names followed by another name (i.e. declarations), names
+ * preceding '::' or '.class' and names in casts are types. The
+ * classification is a heuristic, and may differ from that of the Parser
+ * on unusual code.
+ */
+@Getter
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+class Classifier {
+
+	// type arguments are not looked for beyond this many tokens, which bounds the cost of a misplaced '<'
+	private static final int MAX_TYPE_ARGUMENTS = 256;
+
+	Set<String> types = new HashSet<>();
+	Set<String> methods = new HashSet<>();
+	Set<String> annotations = new HashSet<>();
+
+	@Getter(AccessLevel.NONE)
+	List<Token> tokens;
+
+	// names of the declared classes, whose constructors are neither methods nor types
+	@Getter(AccessLevel.NONE)
+	Set<String> classes = new HashSet<>();
+
+	// the brace depth of the enum body whose constants are being read, or -1
+	@NonFinal
+	@Getter(AccessLevel.NONE)
+	int constants = -1;
+
+	// the brace depth of the annotation type body whose members are being read, or -1
+	@NonFinal
+	@Getter(AccessLevel.NONE)
+	int members = -1;
+
+	// the type of the body opened by the next brace, either ENUM, INTERFACE or 0
+	@NonFinal
+	@Getter(AccessLevel.NONE)
+	int body = 0;
+
+	Classifier(List<Token> tokens) {
+		this.tokens = tokens;
+		for (int i = 0; i + 1 < tokens.size(); i++) {
+			int type = type(i);
+			boolean declaration = type == Lexer.CLASS || type == Lexer.INTERFACE || type == Lexer.ENUM;
+			if (declaration && type(i + 1) == Lexer.Identifier && type(i - 1) != Lexer.DOT) {
+				classes.add(text(i + 1));
+			}
+		}
+		classify();
+	}
+
+	private void classify() {
+		int depth = 0;
+		int size = tokens.size();
+		int i = 0;
+		while (i < size) {
+			switch (type(i)) {
+				case Lexer.IMPORT:
+				case Lexer.PACKAGE:
+					// imported and declared names are not types
+					while (i < size && type(i) != Lexer.SEMI) i++;
+					break;
+				case Lexer.AT:
+					if (type(i + 1) == Lexer.INTERFACE) {
+						body = Lexer.INTERFACE;
+						i++;
+					} else if (type(i + 1) == Lexer.Identifier) {
+						int end = chain(i + 1);
+						annotations.add(join(i + 1, end));
+						i = end - 1;
+					}
+					break;
+				case Lexer.ENUM:
+					body = Lexer.ENUM;
+					break;
+				case Lexer.LBRACE:
+					depth++;
+					if (body == Lexer.ENUM) constants = depth;
+					if (body == Lexer.INTERFACE) members = depth;
+					body = 0;
+					break;
+				case Lexer.RBRACE:
+					if (depth == constants) constants = -1;
+					if (depth == members) members = -1;
+					depth--;
+					break;
+				case Lexer.SEMI:
+					if (depth == constants) constants = -1;
+					break;
+				case Lexer.EXTENDS:
+				case Lexer.IMPLEMENTS:
+				case Lexer.THROWS:
+					i = supertypes(i + 1) - 1;
+					break;
+				case Lexer.CATCH:
+					if (type(i + 1) == Lexer.LPAREN) i = caught(i + 2) - 1;
+					break;
+				case Lexer.LT:
+					int close = typeArguments(i);
+					if (close > i) {
+						types(i + 1, close);
+						i = close;
+					}
+					break;
+				case Lexer.LPAREN:
+					int cast = cast(i);
+					if (cast > i) {
+						types(i + 1, cast);
+						i = cast;
+					}
+					break;
+				case Lexer.NEW:
+					// a constructor reference
+					if (type(i - 1) == Lexer.COLON && type(i - 2) == Lexer.COLON) methods.add(text(i));
+					break;
+				case Lexer.BOOLEAN:
+				case Lexer.BYTE:
+				case Lexer.CHAR:
+				case Lexer.SHORT:
+				case Lexer.INT:
+				case Lexer.LONG:
+				case Lexer.FLOAT:
+				case Lexer.DOUBLE:
+				case Lexer.VOID:
+					types.add(text(i));
+					break;
+				case Lexer.Identifier:
+					i = identifier(i, depth) - 1;
+					break;
+				default:
+			}
+			i++;
+		}
+	}
+
+	/*
+	 * Classifies the qualified name starting at the token, and returns the
+	 * index of the token following it.
+	 */
+	private int identifier(int start, int depth) {
+		int end = chain(start);
+		int previous = type(start - 1);
+		int next = type(end);
+		if (previous == Lexer.NEW || previous == Lexer.INSTANCEOF) {
+			type(start, end);
+		} else if (next == Lexer.LPAREN) {
+			boolean constructor = end == start + 1 && previous != Lexer.DOT && classes.contains(text(start));
+			boolean constant = depth == constants && end == start + 1;
+			boolean member = depth == members && end == start + 1;
+			if (!constructor && !constant && !member) {
+				methods.add(text(end - 1));
+				if (end > start + 1 && previous != Lexer.DOT && isCapitalized(text(end - 3))) {
+					// the scope of a static method call
+					types.add(join(start, end - 2));
+				}
+			}
+		} else if (next == Lexer.DOT && type(end + 1) == Lexer.LT) {
+			int close = typeArguments(end + 1);
+			boolean call = close > 0 && type(close + 1) == Lexer.Identifier && type(close + 2) == Lexer.LPAREN;
+			if (call && previous != Lexer.DOT && isCapitalized(text(end - 1))) {
+				// the scope of a static method call with type arguments
+				types.add(join(start, end));
+			}
+		} else if (previous == Lexer.COLON && type(start - 2) == Lexer.COLON) {
+			methods.add(text(start));
+		} else if (previous != Lexer.DOT && isType(start, end)) {
+			type(start, end);
+		}
+		return end;
+	}
+
+	/*
+	 * Whether the qualified name is followed by type arguments and dimensions
+	 * which are in turn followed by a name, as in a declaration, or by '::'
+	 * or '.class'.
+	 */
+	private boolean isType(int start, int end) {
+		int after = skipType(end);
+		if (after < 0) return false;
+		switch (type(after)) {
+			case Lexer.Identifier:
+			case Lexer.ELLIPSIS:
+				return true;
+			case Lexer.COLON:
+				return type(after + 1) == Lexer.COLON;
+			case Lexer.DOT:
+				return type(after + 1) == Lexer.CLASS;
+			default:
+				return false;
+		}
+	}
+
+	/*
+	 * Returns the index of the parenthesis closing the cast opened at the
+	 * index, or -1 if the parenthesis does not open a cast to a class or an
+	 * intersection of classes.
+	 */
+	private int cast(int open) {
+		switch (type(open - 1)) {
+			case Lexer.IF:
+			case Lexer.WHILE:
+			case Lexer.FOR:
+			case Lexer.SWITCH:
+			case Lexer.SYNCHRONIZED:
+			case Lexer.CATCH:
+			case Lexer.Identifier:
+			case Lexer.RBRACK:
+			case Lexer.GT:
+			case Lexer.THIS:
+			case Lexer.SUPER:
+			case Lexer.RPAREN:
+				return -1;
+			default:
+		}
+		int close = open + 1;
+		while (type(close) == Lexer.Identifier) {
+			close = skipType(chain(close));
+			if (close < 0) return -1;
+			if (type(close) != Lexer.BITAND) break;
+			close++;
+		}
+		if (close == open + 1 || type(close) != Lexer.RPAREN) return -1;
+		switch (type(close + 1)) {
+			case Lexer.Identifier:
+			case Lexer.LPAREN:
+			case Lexer.NEW:
+			case Lexer.THIS:
+			case Lexer.SUPER:
+			case Lexer.BANG:
+			case Lexer.TILDE:
+			case Lexer.IntegerLiteral:
+			case Lexer.FloatingPointLiteral:
+			case Lexer.BooleanLiteral:
+			case Lexer.CharacterLiteral:
+			case Lexer.StringLiteral:
+			case Lexer.NullLiteral:
+				return close;
+			default:
+				return -1;
+		}
+	}
+
+	/*
+	 * Returns the index of the token following the type arguments and
+	 * dimensions at the index, if any, or -1 if the type arguments are not
+	 * well-formed.
+	 */
+	private int skipType(int start) {
+		int after = start;
+		if (type(after) == Lexer.LT) {
+			int close = typeArguments(after);
+			if (close < 0) return -1;
+			after = close + 1;
+		}
+		while (type(after) == Lexer.LBRACK && type(after + 1) == Lexer.RBRACK) after += 2;
+		return after;
+	}
+
+	/*
+	 * Marks the types of an 'extends', 'implements' or 'throws' clause, and
+	 * returns the index of the token ending it.
+	 */
+	private int supertypes(int start) {
+		int end = start;
+		while (end < tokens.size()) {
+			int type = type(end);
+			if (type == Lexer.LBRACE || type == Lexer.SEMI || type == Lexer.IMPLEMENTS) break;
+			end++;
+		}
+		types(start, end);
+		return end;
+	}
+
+	/*
+	 * Marks the types of a catch clause, all names but the last one, and
+	 * returns the index of the parenthesis closing it.
+	 */
+	private int caught(int start) {
+		int end = start;
+		while (end < tokens.size() && type(end) != Lexer.RPAREN) end++;
+		int last = end - 1;
+		while (last >= start && type(last) != Lexer.Identifier) last--;
+		types(start, Math.max(last, start));
+		return end;
+	}
+
+	/*
+	 * Returns the index of the '>' closing the type arguments opened at the
+	 * index, or -1 if the '<' is not followed by well-formed type arguments.
+	 */
+	private int typeArguments(int open) {
+		int nesting = 0;
+		int limit = Math.min(tokens.size(), open + MAX_TYPE_ARGUMENTS);
+		for (int i = open; i < limit; i++) {
+			switch (type(i)) {
+				case Lexer.LT:
+					nesting++;
+					break;
+				case Lexer.GT:
+					// a '>' directly following the closing one is part of a shift
+					if (--nesting == 0) return i > open + 1 && type(i + 1) != Lexer.GT ? i : -1;
+					break;
+				case Lexer.Identifier:
+				case Lexer.DOT:
+				case Lexer.COMMA:
+				case Lexer.QUESTION:
+				case Lexer.EXTENDS:
+				case Lexer.SUPER:
+				case Lexer.BITAND:
+				case Lexer.LBRACK:
+				case Lexer.RBRACK:
+				case Lexer.BOOLEAN:
+				case Lexer.BYTE:
+				case Lexer.CHAR:
+				case Lexer.SHORT:
+				case Lexer.INT:
+				case Lexer.LONG:
+				case Lexer.FLOAT:
+				case Lexer.DOUBLE:
+					break;
+				default:
+					return -1;
+			}
+		}
+		return -1;
+	}
+
+	// marks every qualified name between the indexes as a type
+	private void types(int start, int end) {
+		int i = start;
+		while (i < end) {
+			if (type(i) == Lexer.Identifier && type(i - 1) != Lexer.DOT) {
+				int last = Math.min(chain(i), end);
+				type(i, last);
+				i = last;
+			} else {
+				i++;
+			}
+		}
+	}
+
+	// marks the qualified name and each of its qualifiers as a type
+	private void type(int start, int end) {
+		for (int last = end; last > start; last -= 2) {
+			types.add(join(start, last));
+		}
+	}
+
+	// index of the token following the qualified name starting at the index
+	private int chain(int start) {
+		int end = start + 1;
+		while (type(end) == Lexer.DOT && type(end + 1) == Lexer.Identifier) end += 2;
+		return end;
+	}
+
+	private String join(int start, int end) {
+		if (end == start + 1) return text(start);
+		StringBuilder builder = new StringBuilder();
+		for (int i = start; i < end; i++) builder.append(text(i));
+		return builder.toString();
+	}
+
+	private int type(int index) {
+		return index >= 0 && index < tokens.size() ? tokens.get(index).getType() : Token.INVALID_TYPE;
+	}
+
+	private String text(int index) {
+		return tokens.get(index).getText();
+	}
+
+	private static boolean isCapitalized(String name) {
+		char first = name.charAt(0);
+		return Character.toLowerCase(first) != first;
+	}
+}
@@ -0,0 +1,114 @@
+package ch.usi.si.seart.src2abs;
+
+import lombok.experimental.UtilityClass;
+
+/*
+ * Removes comments from source code in a single pass over its characters.
+ * String, character and text block literals are copied verbatim, so that
+ * comment delimiters appearing within them are left untouched. Comments are
+ * blanked out rather than deleted: every character other than a line
+ * terminator is replaced by a space, which keeps the positions reported by
+ * the parser aligned with the original source code.
+ */
+@UtilityClass
+class Cleaner {
+
+	public String clean(CharSequence sourceCode) {
+		StringBuilder buffer = new StringBuilder(sourceCode.length());
+		clean(sourceCode, buffer);
+		return buffer.toString();
+	}
+
+	public void clean(CharSequence sourceCode, StringBuilder buffer) {
+		int length = sourceCode.length();
+		buffer.ensureCapacity(buffer.length() + length);
+		int start = 0;
+		int i = 0;
+		while (i < length) {
+			char current = sourceCode.charAt(i);
+			char next = i + 1 < length ? sourceCode.charAt(i + 1) : '\0';
+			if (current == '/' && next == '/') {
+				buffer.append(sourceCode, start, i);
+				i = blankLineComment(sourceCode, buffer, i);
+				start = i;
+			} else if (current == '/' && next == '*') {
+				buffer.append(sourceCode, start, i);
+				i = blankBlockComment(sourceCode, buffer, i);
+				start = i;
+			} else if (current == '"' && next == '"' && i + 2 < length && sourceCode.charAt(i + 2) == '"') {
+				i = skipTextBlock(sourceCode, i);
+			} else if (current == '"' || current == '\'') {
+				i = skipQuoted(sourceCode, i, current);
+			} else {
+				i++;
+			}
+		}
+		buffer.append(sourceCode, start, length);
+	}
+
+	private int blankLineComment(CharSequence sourceCode, StringBuilder buffer, int i) {
+		int length = sourceCode.length();
+		while (i < length && !isLineTerminator(sourceCode.charAt(i))) {
+			buffer.append(' ');
+			i++;
+		}
+		return i;
+	}
+
+	private int blankBlockComment(CharSequence sourceCode, StringBuilder buffer, int i) {
+		int length = sourceCode.length();
+		buffer.append(' ').append(' ');
+		i += 2;
+		while (i < length) {
+			char current = sourceCode.charAt(i);
+			if (current == '*' && i + 1 < length && sourceCode.charAt(i + 1) == '/') {
+				buffer.append(' ').append(' ');
+				return i + 2;
+			}
+			buffer.append(isLineTerminator(current) ? current : ' ');
+			i++;
+		}
+		return i;
+	}
+
+	private int skipQuoted(CharSequence sourceCode, int i, char quote) {
+		int length = sourceCode.length();
+		i++;
+		while (i < length) {
+			char current = sourceCode.charAt(i);
+			if (current == '\\') {
+				i += 2;
+			} else if (current == quote) {
+				return i + 1;
+			} else if (isLineTerminator(current)) {
+				// unterminated literal, resume scanning on the next line
+				return i;
+			} else {
+				i++;
+			}
+		}
+		return length;
+	}
+
+	private int skipTextBlock(CharSequence sourceCode, int i) {
+		int length = sourceCode.length();
+		i += 3;
+		while (i < length) {
+			char current = sourceCode.charAt(i);
+			if (current == '\\') {
+				i += 2;
+			} else if (current == '"' && i + 2 < length
+					&& sourceCode.charAt(i + 1) == '"'
+					&& sourceCode.charAt(i + 2) == '"') {
+				return i + 3;
+			} else {
+				i++;
+			}
+		}
+		return length;
+	}
+
+	private boolean isLineTerminator(char character) {
+		return character == '\n' || character == '\r';
+	}
+}
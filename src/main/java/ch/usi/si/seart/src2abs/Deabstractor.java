@@ -0,0 +1,193 @@
+package ch.usi.si.seart.src2abs;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.SneakyThrows;
+import lombok.experimental.FieldDefaults;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Maps abstracted code, such as the output of a model trained on
+ * abstractions, back to source code using the mapping of the abstraction
+ * it was derived from. The mapping is indexed once by family and number,
+ * so that any number of candidates can then be de-abstracted against it.
+ * <p>
+ * An identifier replaced by IDs of different families, e.g. a name used as
+ * both a type and a variable, has only one of its IDs in the mapping of a
+ * {@link Abstractor.Result}. The de-abstractors obtained from the results
+ * themselves know all the IDs, and are preferable to building one from the
+ * mapping whenever the result is at hand.
+ * <p>
+ * Each candidate is scanned once: every whitespace-delimited token that is
+ * an ID of the mapping is replaced by its identifier or literal, while all
+ * other tokens and the whitespace between them are copied as they are. IDs
+ * are only ever matched as whole tokens, so {@code VAR_1} is never mistaken
+ * for a prefix of {@code VAR_12}. IDs missing from the mapping, which a model
+ * can produce, are left in place, and can be detected beforehand with
+ * {@link #isMapped(CharSequence)}. Annotations regain the {@code @} that
+ * was abstracted along with their name. Instances are immutable and can be
+ * shared between threads.
+ */
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class Deabstractor {
+
+	private static final Prefix[] PREFIXES = Prefix.values();
+
+	// identifiers and literals by the ordinal of their prefix and their number, null where unmapped
+	@Getter(AccessLevel.PACKAGE)
+	String[][] originals;
+
+	/**
+	 * @param mapping the mapping of original identifiers and literals to their IDs,
+	 *                as returned by the {@link Abstractor}
+	 * @throws IllegalArgumentException if the mapping contains a value that is not an ID
+	 */
+	public Deabstractor(Map<String, String> mapping) {
+		this.originals = new String[PREFIXES.length][];
+		int[] sizes = new int[PREFIXES.length];
+		for (String id: mapping.values()) {
+			long parsed = parse(id, 0, id.length());
+			if (parsed < 0) throw new IllegalArgumentException("Not an ID: " + id);
+			int ordinal = (int) (parsed >>> 32);
+			sizes[ordinal] = Math.max(sizes[ordinal], (int) parsed + 1);
+		}
+		for (int i = 0; i < PREFIXES.length; i++) originals[i] = new String[sizes[i]];
+		for (Map.Entry<String, String> entry: mapping.entrySet()) {
+			String id = entry.getValue();
+			long parsed = parse(id, 0, id.length());
+			originals[(int) (parsed >>> 32)][(int) parsed] = entry.getKey();
+		}
+	}
+
+	Deabstractor(String[][] originals) {
+		this.originals = originals;
+	}
+
+	/**
+	 * @param abstracted the abstracted code
+	 * @return the source code with the mapped IDs replaced
+	 */
+	public String deabstract(CharSequence abstracted) {
+		StringBuilder builder = new StringBuilder(abstracted.length() * 2);
+		deabstract(abstracted, builder);
+		return builder.toString();
+	}
+
+	/**
+	 * De-abstracts a batch of candidates, e.g. the beams produced by a model for one input.
+	 *
+	 * @param candidates the abstracted code of each candidate
+	 * @return the source code of each candidate, in the same order
+	 */
+	public List<String> deabstract(Collection<? extends CharSequence> candidates) {
+		List<String> results = new ArrayList<>(candidates.size());
+		StringBuilder builder = new StringBuilder();
+		for (CharSequence candidate: candidates) {
+			builder.setLength(0);
+			deabstract(candidate, builder);
+			results.add(builder.toString());
+		}
+		return results;
+	}
+
+	/**
+	 * Writes the source code to the destination as the abstracted code is being scanned.
+	 *
+	 * @param abstracted the abstracted code
+	 * @param out the destination of the source code
+	 */
+	@SneakyThrows(IOException.class)
+	public void deabstract(CharSequence abstracted, Appendable out) {
+		int length = abstracted.length();
+		int start = 0;
+		while (start < length) {
+			int end = start;
+			boolean whitespace = Character.isWhitespace(abstracted.charAt(start));
+			while (end < length && Character.isWhitespace(abstracted.charAt(end)) == whitespace) end++;
+			long parsed = whitespace ? -1 : parse(abstracted, start, end);
+			String original = parsed >= 0 ? original(PREFIXES[(int) (parsed >>> 32)], (int) parsed) : null;
+			if (original != null) {
+				if (PREFIXES[(int) (parsed >>> 32)] == Prefix.ANNOTATION) out.append('@');
+				out.append(original);
+			} else {
+				out.append(abstracted, start, end);
+			}
+			start = end;
+		}
+	}
+
+	/**
+	 * @param abstracted the abstracted code
+	 * @return whether every ID in the abstracted code is in the mapping
+	 */
+	public boolean isMapped(CharSequence abstracted) {
+		int length = abstracted.length();
+		int start = 0;
+		while (start < length) {
+			while (start < length && Character.isWhitespace(abstracted.charAt(start))) start++;
+			int end = start;
+			while (end < length && !Character.isWhitespace(abstracted.charAt(end))) end++;
+			long parsed = end > start ? parse(abstracted, start, end) : -1;
+			if (parsed >= 0 && original(PREFIXES[(int) (parsed >>> 32)], (int) parsed) == null) return false;
+			start = end;
+		}
+		return true;
+	}
+
+	/**
+	 * @param id an ID, e.g. {@code VAR_1}
+	 * @return the identifier or literal replaced by the ID, or {@code null} if it is not mapped
+	 */
+	public String original(CharSequence id) {
+		long parsed = parse(id, 0, id.length());
+		return parsed >= 0 ? original(PREFIXES[(int) (parsed >>> 32)], (int) parsed) : null;
+	}
+
+	/**
+	 * @param prefix the family of the ID
+	 * @param number the number of the ID
+	 * @return the identifier or literal replaced by the ID, or {@code null} if it is not mapped
+	 */
+	public String original(Prefix prefix, int number) {
+		String[] family = originals[prefix.ordinal()];
+		return number > 0 && number < family.length ? family[number] : null;
+	}
+
+	/*
+	 * Parses the token between the indexes as an ID, without allocating.
+	 * Returns the ordinal of the prefix in the upper half and the number in
+	 * the lower half, or -1 if the token is not an ID.
+	 */
+	private static long parse(CharSequence text, int start, int end) {
+		int separator = end - 1;
+		while (separator > start && text.charAt(separator) != '_') separator--;
+		int digits = end - separator - 1;
+		if (separator == start || digits < 1 || digits > 9) return -1;
+		int number = 0;
+		for (int i = separator + 1; i < end; i++) {
+			char c = text.charAt(i);
+			if (c < '0' || c > '9') return -1;
+			number = number * 10 + c - '0';
+		}
+		if (number == 0 || text.charAt(separator + 1) == '0') return -1;
+		for (Prefix prefix: PREFIXES) {
+			String name = prefix.name();
+			if (name.length() == separator - start && regionMatches(text, start, name)) {
+				return (long) prefix.ordinal() << 32 | number;
+			}
+		}
+		return -1;
+	}
+
+	private static boolean regionMatches(CharSequence text, int start, String name) {
+		for (int i = 0; i < name.length(); i++) {
+			if (text.charAt(start + i) != name.charAt(i)) return false;
+		}
+		return true;
+	}
+}
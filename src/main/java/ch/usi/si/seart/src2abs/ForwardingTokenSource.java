@@ -0,0 +1,55 @@
+package ch.usi.si.seart.src2abs;
+
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.TokenFactory;
+import org.antlr.v4.runtime.TokenSource;
+
+/*
+ * Reads the tokens of another source, so that subclasses only have to
+ * override what they observe of the tokens as they are read.
+ */
+@RequiredArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+abstract class ForwardingTokenSource implements TokenSource {
+
+	TokenSource source;
+
+	@Override
+	public Token nextToken() {
+		return source.nextToken();
+	}
+
+	@Override
+	public int getLine() {
+		return source.getLine();
+	}
+
+	@Override
+	public int getCharPositionInLine() {
+		return source.getCharPositionInLine();
+	}
+
+	@Override
+	public CharStream getInputStream() {
+		return source.getInputStream();
+	}
+
+	@Override
+	public String getSourceName() {
+		return source.getSourceName();
+	}
+
+	@Override
+	public void setTokenFactory(TokenFactory<?> factory) {
+		source.setTokenFactory(factory);
+	}
+
+	@Override
+	public TokenFactory<?> getTokenFactory() {
+		return source.getTokenFactory();
+	}
+}
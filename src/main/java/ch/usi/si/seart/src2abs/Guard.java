@@ -0,0 +1,101 @@
+package ch.usi.si.seart.src2abs;
+
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.TokenSource;
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+
+/*
+ * Enforces the deadline and token limit of a single abstraction. Cancellation
+ * is cooperative: the deadline is checked between the stages, while the parser
+ * reads its input, and periodically while tokens are read, so that no stage can
+ * run on for long once it has passed. A guard is used by one thread at a time.
+ */
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+class Guard {
+
+	static final Guard NONE = new Guard(0, 0);
+
+	// tokens read between two checks of the deadline
+	private static final int INTERVAL = 256;
+
+	long timeout;
+	long deadline;
+	int maxTokens;
+
+	@NonFinal
+	int tokens = 0;
+
+	/*
+	 * Both limits are disabled if zero. The deadline is counted from the
+	 * creation of the guard.
+	 */
+	Guard(long timeout, int maxTokens) {
+		this.timeout = timeout;
+		this.deadline = System.nanoTime() + timeout;
+		this.maxTokens = maxTokens;
+	}
+
+	boolean expired() {
+		return timeout > 0 && System.nanoTime() - deadline > 0;
+	}
+
+	void checkDeadline() {
+		if (expired()) {
+			String message = String.format("Exceeded the deadline of %d ms", timeout / 1_000_000);
+			throw new SkippedException(SkippedException.Reason.DEADLINE, message);
+		}
+	}
+
+	static void checkLength(int length, int maxLength) {
+		if (maxLength > 0 && length > maxLength) {
+			String message = String.format("Length of %d characters exceeds the limit of %d", length, maxLength);
+			throw new SkippedException(SkippedException.Reason.LENGTH, message);
+		}
+	}
+
+	private void count() {
+		tokens++;
+		if (maxTokens > 0 && tokens > maxTokens) {
+			String message = String.format("Number of tokens exceeds the limit of %d", maxTokens);
+			throw new SkippedException(SkippedException.Reason.TOKENS, message);
+		}
+		if (tokens % INTERVAL == 0) checkDeadline();
+	}
+
+	/*
+	 * Fails reads once the deadline has passed. The parser does not propagate
+	 * the exception, but stops and reports a problem instead, so the deadline
+	 * has to be checked again once parsing is over.
+	 */
+	Reader reader(Reader reader) {
+		if (timeout == 0) return reader;
+		return new FilterReader(reader) {
+			@Override
+			public int read(char[] buffer, int offset, int length) throws IOException {
+				if (expired()) throw new IOException("Deadline exceeded");
+				return super.read(buffer, offset, length);
+			}
+		};
+	}
+
+	/*
+	 * Counts the tokens read from the source, across all the sources of the guard.
+	 */
+	TokenSource source(TokenSource source) {
+		if (this == NONE) return source;
+		return new ForwardingTokenSource(source) {
+			@Override
+			public Token nextToken() {
+				Token token = super.nextToken();
+				if (token.getType() != Token.EOF) count();
+				return token;
+			}
+		};
+	}
+}
@@ -0,0 +1,73 @@
+package ch.usi.si.seart.src2abs;
+
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+
+import java.util.Arrays;
+
+/*
+ * Numbers distinct strings sequentially, starting from 1, in the order in which
+ * they are first added. Uses open addressing with linear probing over the hash
+ * codes cached by String, so looking up a string that has already been numbered
+ * does not allocate.
+ */
+@FieldDefaults(level = AccessLevel.PRIVATE)
+class IdTable {
+
+	// keys by number - 1
+	String[] keys = new String[8];
+
+	// number of the key hashed to each slot, 0 for empty slots
+	int[] slots = new int[16];
+
+	int size = 0;
+
+	int get(String key) {
+		int mask = slots.length - 1;
+		for (int slot = hash(key) & mask; ; slot = (slot + 1) & mask) {
+			int number = slots[slot];
+			if (number == 0 || keys[number - 1].equals(key)) return number;
+		}
+	}
+
+	boolean contains(String key) {
+		return get(key) != 0;
+	}
+
+	int add(String key) {
+		int mask = slots.length - 1;
+		int slot = hash(key) & mask;
+		for (int number = slots[slot]; number != 0; number = slots[slot]) {
+			if (keys[number - 1].equals(key)) return number;
+			slot = (slot + 1) & mask;
+		}
+		if (size == keys.length) keys = Arrays.copyOf(keys, size * 2);
+		keys[size++] = key;
+		slots[slot] = size;
+		if (size * 2 > slots.length) rehash();
+		return size;
+	}
+
+	String key(int number) {
+		return keys[number - 1];
+	}
+
+	int size() {
+		return size;
+	}
+
+	private void rehash() {
+		slots = new int[slots.length * 2];
+		int mask = slots.length - 1;
+		for (int number = 1; number <= size; number++) {
+			int slot = hash(keys[number - 1]) & mask;
+			while (slots[slot] != 0) slot = (slot + 1) & mask;
+			slots[slot] = number;
+		}
+	}
+
+	private static int hash(String key) {
+		int h = key.hashCode();
+		return h ^ (h >>> 16);
+	}
+}
@@ -0,0 +1,244 @@
+package ch.usi.si.seart.src2abs;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.experimental.FieldDefaults;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Finds the identifiers and literals occurring most frequently in a corpus,
+ * which are the natural candidates for idioms. Occurrences are counted per
+ * {@link Prefix} family from the abstractions of the corpus, so that the
+ * same name can rank differently as a type, a method or a variable.
+ * <p>
+ * Memory use does not grow with the size of the corpus: occurrences are
+ * counted in a count-min sketch of fixed size, which may overestimate but
+ * never underestimates a count, and only a bounded number of candidates with
+ * the highest estimates are remembered. Instances are not thread-safe, but
+ * are mergeable: a corpus can be mined in parallel with one instance per
+ * thread, which are {@link #merge(IdiomMiner) merged} once done.
+ */
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class IdiomMiner {
+
+	private static final Prefix[] PREFIXES = Prefix.values();
+
+	private static final int DEPTH = 4;
+	private static final int WIDTH = 1 << 15;
+
+	@Getter
+	int top;
+
+	Family[] families = new Family[PREFIXES.length];
+
+	/**
+	 * @param top the number of idioms mined per family
+	 */
+	public IdiomMiner(int top) {
+		if (top < 1) throw new IllegalArgumentException("Number of idioms must be positive");
+		this.top = top;
+		// the candidates beyond the top ones give those counted late in the corpus a chance to catch up
+		int candidates = Math.max(top * 4, 64);
+		for (int i = 0; i < families.length; i++) families[i] = new Family(candidates);
+	}
+
+	/**
+	 * Counts the occurrences of the identifiers and literals in the abstraction.
+	 * For the counts to be meaningful, the abstraction must have been
+	 * performed without idioms.
+	 *
+	 * @param result the abstraction of one input of the corpus
+	 */
+	public void add(Abstractor.Result result) {
+		Deabstractor originals = result.deabstractor();
+		String abstracted = result.getAbstracted();
+		int start = 0;
+		while (start < abstracted.length()) {
+			int end = abstracted.indexOf(' ', start);
+			if (end < 0) end = abstracted.length();
+			if (end > start) {
+				String id = abstracted.substring(start, end);
+				String original = originals.original(id);
+				if (original != null) {
+					Prefix prefix = Prefix.valueOf(id.substring(0, id.lastIndexOf('_')));
+					// annotations are only kept as idioms when spelled the way they are used
+					if (prefix == Prefix.ANNOTATION) original = "@" + original;
+					families[prefix.ordinal()].add(original);
+				}
+			}
+			start = end + 1;
+		}
+	}
+
+	/**
+	 * Adds the counts of another instance to this one.
+	 *
+	 * @param other an instance mining another part of the corpus, with the same number of idioms
+	 */
+	public void merge(IdiomMiner other) {
+		if (other.top != top) throw new IllegalArgumentException("Can not merge miners of different sizes");
+		for (int i = 0; i < families.length; i++) families[i].merge(other.families[i]);
+	}
+
+	/**
+	 * @param prefix the family of IDs
+	 * @return the most frequent identifiers or literals of the family, most frequent first,
+	 *         with annotations prefixed by {@code @} as expected of idioms
+	 */
+	public List<String> getIdioms(Prefix prefix) {
+		return families[prefix.ordinal()].top(top);
+	}
+
+	/**
+	 * @param prefix the family of IDs
+	 * @param original the identifier or literal, with annotations prefixed by {@code @}
+	 * @return an estimate of the occurrences of the identifier or literal in the family,
+	 *         which is never lower than the actual number
+	 */
+	public long estimate(Prefix prefix, String original) {
+		return families[prefix.ordinal()].sketch.estimate(original);
+	}
+
+	/**
+	 * Writes the idioms of all families to a file accepted by the {@code --idioms} option,
+	 * one per line, grouped by family.
+	 *
+	 * @param path the destination file
+	 * @return the number of distinct idioms written
+	 * @throws IOException if the file can not be written
+	 */
+	public int write(Path path) throws IOException {
+		Set<String> idioms = new LinkedHashSet<>();
+		for (Prefix prefix: PREFIXES) idioms.addAll(getIdioms(prefix));
+		Files.write(path, idioms, StandardCharsets.UTF_8);
+		return idioms.size();
+	}
+
+	/*
+	 * The counts of a single family: the sketch of all occurrences, and the
+	 * candidates with the highest estimated counts. The candidates are also
+	 * kept ordered by estimate, so that the lowest one is found, and evicted
+	 * when outranked, in logarithmic time.
+	 */
+	@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+	private static final class Family {
+
+		private static final Comparator<Map.Entry<String, Long>> ORDER =
+				Map.Entry.<String, Long>comparingByValue().thenComparing(Map.Entry.comparingByKey());
+
+		int capacity;
+		Sketch sketch = new Sketch();
+		Map<String, Long> candidates = new HashMap<>();
+		NavigableSet<Map.Entry<String, Long>> ranked = new TreeSet<>(ORDER);
+
+		Family(int capacity) {
+			this.capacity = capacity;
+		}
+
+		void add(String original) {
+			long estimate = sketch.add(original);
+			Long previous = candidates.get(original);
+			if (previous != null) {
+				ranked.remove(Map.entry(original, previous));
+			} else if (candidates.size() >= capacity) {
+				Map.Entry<String, Long> lowest = ranked.first();
+				if (estimate <= lowest.getValue()) return;
+				ranked.pollFirst();
+				candidates.remove(lowest.getKey());
+			}
+			candidates.put(original, estimate);
+			ranked.add(Map.entry(original, estimate));
+		}
+
+		void merge(Family other) {
+			sketch.merge(other.sketch);
+			Set<String> union = new LinkedHashSet<>(candidates.keySet());
+			union.addAll(other.candidates.keySet());
+			candidates.clear();
+			for (String original: union) candidates.put(original, sketch.estimate(original));
+			if (candidates.size() > capacity) {
+				List<String> kept = top(capacity);
+				candidates.keySet().retainAll(Set.copyOf(kept));
+			}
+			ranked.clear();
+			candidates.forEach((original, estimate) -> ranked.add(Map.entry(original, estimate)));
+		}
+
+		List<String> top(int count) {
+			List<Map.Entry<String, Long>> entries = new ArrayList<>(candidates.entrySet());
+			entries.sort(Map.Entry.<String, Long>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey()));
+			List<String> top = new ArrayList<>(Math.min(count, entries.size()));
+			for (int i = 0; i < entries.size() && i < count; i++) top.add(entries.get(i).getKey());
+			return top;
+		}
+	}
+
+	/*
+	 * A count-min sketch: every row counts each key in one of its cells,
+	 * chosen by a hash of its own, and the estimate of a key is the lowest of
+	 * its cells. The hashes of the rows are derived from a single 64-bit hash
+	 * of the key.
+	 */
+	@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+	private static final class Sketch {
+
+		long[][] cells = new long[DEPTH][WIDTH];
+
+		long add(String key) {
+			long hash = hash(key);
+			long estimate = Long.MAX_VALUE;
+			for (int row = 0; row < DEPTH; row++) {
+				estimate = Math.min(estimate, ++cells[row][cell(hash, row)]);
+			}
+			return estimate;
+		}
+
+		long estimate(String key) {
+			long hash = hash(key);
+			long estimate = Long.MAX_VALUE;
+			for (int row = 0; row < DEPTH; row++) {
+				estimate = Math.min(estimate, cells[row][cell(hash, row)]);
+			}
+			return estimate;
+		}
+
+		void merge(Sketch other) {
+			for (int row = 0; row < DEPTH; row++) {
+				for (int cell = 0; cell < WIDTH; cell++) cells[row][cell] += other.cells[row][cell];
+			}
+		}
+
+		private static int cell(long hash, int row) {
+			int combined = (int) hash + row * (int) (hash >>> 32);
+			return (combined & Integer.MAX_VALUE) % WIDTH;
+		}
+
+		// FNV-1a over the characters, followed by the finalizer of MurmurHash3
+		private static long hash(String key) {
+			long hash = 0xcbf29ce484222325L;
+			for (int i = 0; i < key.length(); i++) {
+				hash ^= key.charAt(i);
+				hash *= 0x100000001b3L;
+			}
+			hash ^= hash >>> 33;
+			hash *= 0xff51afd7ed558ccdL;
+			hash ^= hash >>> 33;
+			hash *= 0xc4ceb9fe1a85ec53L;
+			hash ^= hash >>> 33;
+			return hash;
+		}
+	}
+}
@@ -0,0 +1,161 @@
+package ch.usi.si.seart.src2abs;
+
+import com.github.javaparser.JavaToken;
+import com.github.javaparser.TokenRange;
+import com.github.javaparser.ast.Node;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.experimental.FieldDefaults;
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CommonTokenFactory;
+import org.antlr.v4.runtime.IntStream;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.TokenFactory;
+import org.antlr.v4.runtime.TokenSource;
+import org.antlr.v4.runtime.Vocabulary;
+import org.antlr.v4.runtime.WritableToken;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+
+/*
+ * Derives the token stream from the tokens JavaParser recorded while parsing,
+ * instead of lexing the source code a second time. The tokens are converted to
+ * their Lexer counterparts, splitting the operators which the Lexer does not
+ * know (e.g. '::' and '->') into the separate tokens it would have produced.
+ */
+@FieldDefaults(level = AccessLevel.PRIVATE)
+class JavaTokenSource implements TokenSource {
+
+	private static final Map<String, Integer> LITERAL_TYPES = literalTypes();
+
+	// JavaToken.Kind.valueOf is too large to be compiled, so kinds are compared as integers
+	private static final int EOF_KIND = JavaToken.Kind.EOF.getKind();
+	private static final Map<Integer, Integer> LITERAL_KIND_TYPES = Map.of(
+			JavaToken.Kind.INTEGER_LITERAL.getKind(), Lexer.IntegerLiteral,
+			JavaToken.Kind.LONG_LITERAL.getKind(), Lexer.IntegerLiteral,
+			JavaToken.Kind.FLOATING_POINT_LITERAL.getKind(), Lexer.FloatingPointLiteral,
+			JavaToken.Kind.CHARACTER_LITERAL.getKind(), Lexer.CharacterLiteral,
+			JavaToken.Kind.STRING_LITERAL.getKind(), Lexer.StringLiteral,
+			JavaToken.Kind.TEXT_BLOCK_LITERAL.getKind(), Lexer.StringLiteral
+	);
+
+	final Queue<Token> pending = new ArrayDeque<>(4);
+
+	JavaToken next;
+
+	// the last token to convert, or null to convert up to the end of the file
+	final JavaToken last;
+
+	@Getter
+	int line = 1;
+
+	@Getter
+	int charPositionInLine = 0;
+
+	@Getter
+	@Setter
+	TokenFactory<?> tokenFactory = CommonTokenFactory.DEFAULT;
+
+	public JavaTokenSource(Node node) {
+		JavaToken token = node.getTokenRange()
+				.map(TokenRange::getBegin)
+				.orElseThrow(() -> new IllegalArgumentException("Parser did not store the tokens of the node"));
+		while (token.getPreviousToken().isPresent()) {
+			token = token.getPreviousToken().get();
+		}
+		this.next = token;
+		this.last = null;
+	}
+
+	/*
+	 * Converts only the tokens of the given range, e.g. those of one
+	 * method within a larger compilation unit.
+	 */
+	public JavaTokenSource(TokenRange range) {
+		this.next = range.getBegin();
+		this.last = range.getEnd();
+	}
+
+	@Override
+	public Token nextToken() {
+		while (pending.isEmpty() && next != null) {
+			JavaToken token = next;
+			next = token.getKind() != EOF_KIND && token != last ? token.getNextToken().orElse(null) : null;
+			convert(token);
+		}
+		Token token = pending.poll();
+		return token != null ? token : tokenFactory.create(Token.EOF, "<EOF>");
+	}
+
+	private void convert(JavaToken token) {
+		if (token.getKind() == EOF_KIND) return;
+		token.getRange().ifPresent(range -> {
+			line = range.begin.line;
+			charPositionInLine = range.begin.column - 1;
+		});
+		String text = token.getText();
+		switch (token.getCategory()) {
+			case WHITESPACE_NO_EOL:
+			case EOL:
+			case COMMENT:
+				return;
+			case IDENTIFIER:
+				add(Lexer.Identifier, text);
+				return;
+			case LITERAL:
+				Integer kindType = LITERAL_KIND_TYPES.get(token.getKind());
+				add(kindType != null ? kindType : LITERAL_TYPES.getOrDefault(text, Lexer.Identifier), text);
+				return;
+			default:
+				Integer type = LITERAL_TYPES.get(text);
+				if (type != null) {
+					add(type, text);
+				} else if (Character.isJavaIdentifierStart(text.charAt(0))) {
+					// contextual keywords are plain identifiers to the Lexer
+					add(Lexer.Identifier, text);
+				} else {
+					for (int i = 0; i < text.length(); i++) {
+						String character = text.substring(i, i + 1);
+						Integer characterType = LITERAL_TYPES.get(character);
+						if (characterType != null) add(characterType, character);
+					}
+				}
+		}
+	}
+
+	private void add(int type, String text) {
+		Token token = tokenFactory.create(type, text);
+		if (token instanceof WritableToken) {
+			WritableToken writable = (WritableToken) token;
+			writable.setLine(line);
+			writable.setCharPositionInLine(charPositionInLine);
+		}
+		pending.add(token);
+	}
+
+	@Override
+	public CharStream getInputStream() {
+		return null;
+	}
+
+	@Override
+	public String getSourceName() {
+		return IntStream.UNKNOWN_SOURCE_NAME;
+	}
+
+	private static Map<String, Integer> literalTypes() {
+		Map<String, Integer> types = new HashMap<>();
+		Vocabulary vocabulary = Lexer.VOCABULARY;
+		for (int type = 1; type <= vocabulary.getMaxTokenType(); type++) {
+			String name = vocabulary.getLiteralName(type);
+			if (name != null) types.put(name.substring(1, name.length() - 1), type);
+		}
+		types.put("true", Lexer.BooleanLiteral);
+		types.put("false", Lexer.BooleanLiteral);
+		return Map.copyOf(types);
+	}
+}
@@ -0,0 +1,309 @@
+package ch.usi.si.seart.src2abs;
+
+import com.github.javaparser.ParseProblemException;
+import com.github.javaparser.Problem;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+import lombok.experimental.UtilityClass;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/*
+ * Just enough JSON to read the source code from a record of a JSON Lines file
+ * and to write the abstraction results back. Records are validated in full,
+ * but only the values of top-level string fields are ever decoded.
+ */
+@UtilityClass
+class Json {
+
+	/*
+	 * Returns the decoded value of a top-level string field, or null if the
+	 * record does not have the field. Throws an IllegalArgumentException if
+	 * the record is not a well-formed JSON object, or the value is not a string.
+	 */
+	public String field(String record, String name) {
+		Cursor cursor = new Cursor(record);
+		String value = null;
+		boolean found = false;
+		cursor.skipWhitespace();
+		cursor.expect('{');
+		cursor.skipWhitespace();
+		if (!cursor.consume('}')) {
+			do {
+				cursor.skipWhitespace();
+				String key = cursor.readString();
+				cursor.skipWhitespace();
+				cursor.expect(':');
+				cursor.skipWhitespace();
+				if (!found && key.equals(name)) {
+					if (cursor.peek() != '"')
+						throw new IllegalArgumentException("Field '" + name + "' is not a string");
+					value = cursor.readString();
+					found = true;
+				} else {
+					cursor.skipValue();
+				}
+				cursor.skipWhitespace();
+			} while (cursor.consume(','));
+			cursor.expect('}');
+		}
+		cursor.skipWhitespace();
+		if (!cursor.atEnd()) throw cursor.error("Unexpected content after the record");
+		return value;
+	}
+
+	/*
+	 * Appends the 'abstracted' and 'mapping' fields for the abstraction of the
+	 * code, or an 'error' field if it could not be abstracted, or a 'skipped'
+	 * object with the reason and message if it exceeded one of the limits.
+	 * Returns false unless the code was abstracted.
+	 */
+	public boolean abstraction(Abstractor abstractor, String code, StringBuilder out) {
+		Abstractor.Result result;
+		try {
+			result = abstractor.abstractCode(code);
+		} catch (ParseProblemException ex) {
+			String message = ex.getProblems().stream()
+					.map(Problem::getMessage)
+					.flatMap(String::lines)
+					.findFirst()
+					.map(line -> ": " + line)
+					.orElse("");
+			error("Could not be parsed" + message, out);
+			return false;
+		} catch (SkippedException ex) {
+			out.append("\"skipped\":{\"reason\":");
+			quote(ex.getReason().name().toLowerCase(Locale.ROOT), out);
+			out.append(",\"message\":");
+			quote(ex.getMessage(), out);
+			out.append('}');
+			return false;
+		} catch (RuntimeException ex) {
+			error(ex.toString(), out);
+			return false;
+		} catch (StackOverflowError ex) {
+			// the parser recurses once per level of nesting, which deeply nested code exhausts
+			error("Too deeply nested to be abstracted", out);
+			return false;
+		}
+		out.append("\"abstracted\":");
+		quote(result.getAbstracted(), out);
+		out.append(",\"mapping\":{");
+		String separator = "";
+		for (Map.Entry<String, String> entry: result.getMapping().entrySet()) {
+			out.append(separator);
+			quote(entry.getKey(), out);
+			out.append(':');
+			quote(entry.getValue(), out);
+			separator = ",";
+		}
+		out.append('}');
+		return true;
+	}
+
+	public void error(String message, StringBuilder out) {
+		out.append("\"error\":");
+		quote(message, out);
+	}
+
+	public void quote(CharSequence value, StringBuilder out) {
+		out.append('"');
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			switch (c) {
+				case '"':
+					out.append("\\\"");
+					break;
+				case '\\':
+					out.append("\\\\");
+					break;
+				case '\n':
+					out.append("\\n");
+					break;
+				case '\r':
+					out.append("\\r");
+					break;
+				case '\t':
+					out.append("\\t");
+					break;
+				case '\b':
+					out.append("\\b");
+					break;
+				case '\f':
+					out.append("\\f");
+					break;
+				default:
+					if (c < 0x20) {
+						out.append(String.format("\\u%04x", (int) c));
+					} else {
+						out.append(c);
+					}
+			}
+		}
+		out.append('"');
+	}
+
+	@RequiredArgsConstructor
+	@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+	private static final class Cursor {
+
+		private static final int MAX_DEPTH = 1000;
+
+		private static final Pattern NUMBER = Pattern.compile("-?(0|[1-9][0-9]*)(\\.[0-9]+)?([eE][+-]?[0-9]+)?");
+
+		String text;
+
+		@NonFinal
+		int position = 0;
+
+		boolean atEnd() {
+			return position >= text.length();
+		}
+
+		char peek() {
+			if (atEnd()) throw error("Unexpected end of the record");
+			return text.charAt(position);
+		}
+
+		boolean consume(char expected) {
+			if (atEnd() || text.charAt(position) != expected) return false;
+			position++;
+			return true;
+		}
+
+		void expect(char expected) {
+			if (!consume(expected)) throw error("Expected '" + expected + "'");
+		}
+
+		void skipWhitespace() {
+			while (!atEnd()) {
+				char c = text.charAt(position);
+				if (c != ' ' && c != '\t' && c != '\n' && c != '\r') return;
+				position++;
+			}
+		}
+
+		String readString() {
+			expect('"');
+			StringBuilder value = null;
+			int start = position;
+			while (true) {
+				char c = peek();
+				if (c == '"') {
+					String tail = text.substring(start, position++);
+					return value == null ? tail : value.append(tail).toString();
+				} else if (c == '\\') {
+					if (value == null) value = new StringBuilder();
+					value.append(text, start, position++);
+					value.append(readEscape());
+					start = position;
+				} else if (c < 0x20) {
+					throw error("Unescaped control character in string");
+				} else {
+					position++;
+				}
+			}
+		}
+
+		private char readEscape() {
+			char c = peek();
+			position++;
+			switch (c) {
+				case '"':
+				case '\\':
+				case '/':
+					return c;
+				case 'b':
+					return '\b';
+				case 'f':
+					return '\f';
+				case 'n':
+					return '\n';
+				case 'r':
+					return '\r';
+				case 't':
+					return '\t';
+				case 'u':
+					if (position + 4 > text.length()) throw error("Unexpected end of the record");
+					int decoded = 0;
+					for (int i = 0; i < 4; i++) {
+						int digit = Character.digit(text.charAt(position + i), 16);
+						// Character.digit also accepts non-ASCII digits, which JSON does not
+						if (digit < 0 || text.charAt(position + i) > 'f') throw error("Invalid unicode escape");
+						decoded = decoded << 4 | digit;
+					}
+					position += 4;
+					return (char) decoded;
+				default:
+					throw error("Invalid escape sequence");
+			}
+		}
+
+		/*
+		 * Skips over a value without recursing, so that the depth of the
+		 * nesting is bounded by MAX_DEPTH rather than by the stack.
+		 */
+		void skipValue() {
+			// the closing brackets of the arrays and objects the value is in
+			StringBuilder enclosing = new StringBuilder();
+			while (true) {
+				char c = peek();
+				if (c == '{' || c == '[') {
+					if (enclosing.length() == MAX_DEPTH) throw error("Nesting deeper than " + MAX_DEPTH + " levels");
+					char close = c == '{' ? '}' : ']';
+					position++;
+					skipWhitespace();
+					if (!consume(close)) {
+						enclosing.append(close);
+						if (close == '}') skipKey();
+						continue;
+					}
+				} else if (c == '"') {
+					readString();
+				} else {
+					skipLiteral();
+				}
+				// the value is complete, as are the arrays and objects it ends
+				while (true) {
+					if (enclosing.length() == 0) return;
+					char close = enclosing.charAt(enclosing.length() - 1);
+					skipWhitespace();
+					if (consume(',')) {
+						skipWhitespace();
+						if (close == '}') skipKey();
+						break;
+					}
+					expect(close);
+					enclosing.setLength(enclosing.length() - 1);
+				}
+			}
+		}
+
+		private void skipKey() {
+			readString();
+			skipWhitespace();
+			expect(':');
+			skipWhitespace();
+		}
+
+		private void skipLiteral() {
+			int start = position;
+			while (!atEnd() && "{}[],: \t\n\r\"".indexOf(text.charAt(position)) < 0) position++;
+			String literal = text.substring(start, position);
+			if (!literal.equals("true") && !literal.equals("false") && !literal.equals("null") && !isNumber(literal))
+				throw error("Invalid value");
+		}
+
+		private static boolean isNumber(String literal) {
+			return NUMBER.matcher(literal).matches();
+		}
+
+		IllegalArgumentException error(String message) {
+			return new IllegalArgumentException(message + " at position " + position);
+		}
+	}
+}
@@ -0,0 +1,180 @@
+package ch.usi.si.seart.src2abs;
+
+import lombok.Cleanup;
+import lombok.experimental.UtilityClass;
+import org.antlr.v4.runtime.atn.ATNSimulator;
+import org.antlr.v4.runtime.atn.LexerATNSimulator;
+import org.antlr.v4.runtime.dfa.DFA;
+import org.antlr.v4.runtime.dfa.DFAState;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+
+/**
+ * Manages the DFA in which all instances of the {@link Lexer} cache their
+ * decisions. The DFA starts out empty, and every input that takes the lexer
+ * down a path it has not seen before is simulated on the ATN of the grammar,
+ * which is much slower than following the DFA. Until the DFA has seen enough
+ * inputs, lexing is therefore several times slower than in the steady state.
+ * Warming the DFA up front, either from the bundled training corpus or from
+ * a snapshot of a previous run, removes this cost from the inputs that follow.
+ * <p>
+ * The DFA is shared by all lexers of the JVM, and is safe to share between
+ * concurrent lexers: the runtime only adds states and edges to the DFA while
+ * holding a lock on it, and a lexer that finds a missing edge computes it
+ * from the ATN instead, with the same result. The DFA only caches edges for
+ * ASCII characters, so its size is bounded by the grammar rather than by the
+ * inputs, and needs no eviction.
+ */
+@UtilityClass
+public class LexerCache {
+
+	private static final String TRAINING_CORPUS = "warm-up.txt";
+	private static final String SNAPSHOT_HEADER = "# src2abs lexer DFA snapshot, version 1";
+
+	/**
+	 * Lexes the bundled training corpus, which covers all the token types of the grammar.
+	 */
+	public void warmUp() {
+		try {
+			@Cleanup InputStream stream = LexerCache.class.getResourceAsStream(TRAINING_CORPUS);
+			if (stream == null) throw new IllegalStateException("Training corpus not found: " + TRAINING_CORPUS);
+			warmUp(new String(stream.readAllBytes(), StandardCharsets.UTF_8));
+		} catch (IOException ex) {
+			throw new IllegalStateException("Training corpus could not be read", ex);
+		}
+	}
+
+	/**
+	 * @param sourceCode source code representative of the inputs to come
+	 */
+	public void warmUp(CharSequence sourceCode) {
+		Tokenizer.readTokens(sourceCode);
+	}
+
+	/**
+	 * @return the number of states in the DFA
+	 */
+	public int size() {
+		int size = 0;
+		for (DFA dfa: Lexer._decisionToDFA) size += dfa.states.size();
+		return size;
+	}
+
+	/**
+	 * Discards the DFA, so that it is rebuilt from scratch by the inputs that follow.
+	 */
+	public void clear() {
+		new Lexer(new CharSequenceStream("")).getInterpreter().clearDFA();
+	}
+
+	/**
+	 * Writes the inputs that rebuild the current DFA when {@link #restore(Path) restored}:
+	 * for every edge of the DFA, the shortest input taking the lexer through it.
+	 * The snapshot does not depend on the internals of the runtime, and remains
+	 * valid, if not complete, when the grammar changes.
+	 *
+	 * @param path the destination file
+	 * @return the number of inputs written
+	 * @throws IOException if the file can not be written
+	 */
+	public int snapshot(Path path) throws IOException {
+		List<String> lines = new ArrayList<>();
+		lines.add(SNAPSHOT_HEADER);
+		// only the default mode is ever entered, as the grammar has no other
+		DFA dfa = Lexer._decisionToDFA[0];
+		DFAState start = dfa.s0;
+		if (start != null) {
+			Map<DFAState, String> paths = new HashMap<>();
+			Queue<DFAState> queue = new ArrayDeque<>();
+			paths.put(start, "");
+			queue.add(start);
+			while (!queue.isEmpty()) {
+				DFAState state = queue.remove();
+				DFAState[] edges = state.edges;
+				if (edges == null) continue;
+				String prefix = paths.get(state);
+				for (int i = 0; i < edges.length; i++) {
+					DFAState target = edges[i];
+					if (target == null) continue;
+					String input = prefix + (char) (LexerATNSimulator.MIN_DFA_EDGE + i);
+					lines.add(escape(input));
+					if (target != ATNSimulator.ERROR && !paths.containsKey(target)) {
+						paths.put(target, input);
+						queue.add(target);
+					}
+				}
+			}
+		}
+		Files.write(path, lines, StandardCharsets.UTF_8);
+		return lines.size() - 1;
+	}
+
+	/**
+	 * Rebuilds the DFA stored in a snapshot, on top of the current one.
+	 *
+	 * @param path a file written by {@link #snapshot(Path)}
+	 * @return the number of inputs replayed
+	 * @throws IOException if the file can not be read, or is not a snapshot
+	 */
+	public int restore(Path path) throws IOException {
+		@Cleanup BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8);
+		String header = reader.readLine();
+		if (!SNAPSHOT_HEADER.equals(header)) throw new IOException("Not a lexer snapshot: " + path);
+		int inputs = 0;
+		for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+			warmUp(unescape(line));
+			inputs++;
+		}
+		return inputs;
+	}
+
+	// edges only exist for ASCII characters, of which only the printable ones are written as they are
+	private String escape(String input) {
+		StringBuilder builder = new StringBuilder(input.length());
+		for (int i = 0; i < input.length(); i++) {
+			char c = input.charAt(i);
+			if (c == '\\') {
+				builder.append("\\\\");
+			} else if (c < 0x20 || c > 0x7e) {
+				builder.append(String.format("\\u%04x", (int) c));
+			} else {
+				builder.append(c);
+			}
+		}
+		return builder.toString();
+	}
+
+	private String unescape(String line) throws IOException {
+		StringBuilder builder = new StringBuilder(line.length());
+		for (int i = 0; i < line.length(); i++) {
+			char c = line.charAt(i);
+			if (c != '\\') {
+				builder.append(c);
+			} else if (i + 1 < line.length() && line.charAt(i + 1) == '\\') {
+				builder.append('\\');
+				i++;
+			} else if (i + 5 < line.length() && line.charAt(i + 1) == 'u') {
+				try {
+					builder.append((char) Integer.parseInt(line.substring(i + 2, i + 6), 16));
+				} catch (NumberFormatException ex) {
+					throw new IOException("Invalid escape in lexer snapshot: " + line);
+				}
+				i += 5;
+			} else {
+				throw new IOException("Invalid escape in lexer snapshot: " + line);
+			}
+		}
+		return builder.toString();
+	}
+}
@@ -8,16 +8,43 @@ import lombok.experimental.FieldDefaults;
 import picocli.CommandLine;
 import picocli.CommandLine.Command;
 import picocli.CommandLine.IExecutionExceptionHandler;
+import picocli.CommandLine.Model.CommandSpec;
 import picocli.CommandLine.Option;
+import picocli.CommandLine.ParameterException;
 import picocli.CommandLine.Parameters;
 import picocli.CommandLine.ParseResult;
+import picocli.CommandLine.Spec;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.LineNumberReader;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -31,10 +58,20 @@ import java.util.stream.Stream;
 @FieldDefaults(level = AccessLevel.PRIVATE)
 public class Main implements Callable<Integer> {
 
+	private static final String STDIN = "-";
+
+	@Spec
+	@SuppressWarnings("unused")
+	CommandSpec spec;
+
 	@SuppressWarnings({"unused", "FieldMayBeFinal"})
 	@Parameters(
 			index = "0",
-			description = "Path to file containing the source code used as input."
+			arity = "0..1",
+			description =
+					"Path to file containing the source code used as input. " +
+					"If a directory is specified, all of its files matching the glob are abstracted. " +
+					"Use '-' to read JSON Lines records from standard input."
 	)
 	Path input;
 
@@ -64,10 +101,198 @@ public class Main implements Callable<Integer> {
 	)
 	Parser.Granularity granularity = Parser.Granularity.CLASS;
 
+	@SuppressWarnings({"unused", "FieldMayBeFinal"})
+	@Option(
+			names = {"--lexing"},
+			description =
+					"Source of the token stream used for abstraction: " +
+					"ANTLR lexes the code separately, JAVAPARSER reuses the tokens produced while parsing. " +
+					"Default: ANTLR."
+	)
+	Tokenizer.Lexing lexing = Tokenizer.Lexing.ANTLR;
+
+	@SuppressWarnings({"unused", "FieldMayBeFinal"})
+	@Option(
+			names = {"--parsing"},
+			description =
+					"How identifiers are classified: " +
+					"JAVAPARSER parses the code and fails if it can not be parsed, " +
+					"HEURISTIC classifies them from the surrounding tokens without parsing, " +
+					"FALLBACK parses the code and classifies them heuristically if it can not be parsed. " +
+					"Default: JAVAPARSER."
+	)
+	Parser.Parsing parsing = Parser.Parsing.JAVAPARSER;
+
+	@SuppressWarnings({"unused", "FieldMayBeFinal"})
+	@Option(
+			names = {"-l", "--list"},
+			description =
+					"Treat the input as a newline-separated list of source file paths. " +
+					"Relative paths are resolved against the directory of the list."
+	)
+	boolean list = false;
+
+	@SuppressWarnings({"unused", "FieldMayBeFinal"})
+	@Option(
+			names = {"--glob"},
+			description =
+					"Glob used to select files when the input is a directory. " +
+					"Default: ${DEFAULT-VALUE}."
+	)
+	String glob = "**.java";
+
+	@SuppressWarnings({"unused", "FieldMayBeFinal"})
+	@Option(
+			names = {"-t", "--threads"},
+			description =
+					"Number of worker threads used when abstracting multiple files. " +
+					"Default: number of available processors."
+	)
+	int threads = Runtime.getRuntime().availableProcessors();
+
+	@SuppressWarnings({"unused", "FieldMayBeFinal"})
+	@Option(
+			names = {"--jsonl"},
+			description =
+					"Treat the input as JSON Lines, and write each record enriched with its abstraction and mapping. " +
+					"Records that can not be abstracted are written with an error message instead."
+	)
+	boolean jsonl = false;
+
+	@SuppressWarnings({"unused", "FieldMayBeFinal"})
+	@Option(
+			names = {"-f", "--field"},
+			description =
+					"Field of the JSON Lines records containing the source code. " +
+					"Default: ${DEFAULT-VALUE}."
+	)
+	String field = "code";
+
+	@SuppressWarnings({"unused", "FieldMayBeFinal"})
+	@Option(
+			names = {"--cache"},
+			description =
+					"Directory in which abstraction results are cached between runs, " +
+					"so that duplicate inputs are abstracted only once."
+	)
+	Path cache;
+
+	@SuppressWarnings({"unused", "FieldMayBeFinal"})
+	@Option(
+			names = {"--cache-size"},
+			description =
+					"Maximum size of the cache directory in megabytes. " +
+					"Default: ${DEFAULT-VALUE}."
+	)
+	long cacheSize = 256;
+
+	@SuppressWarnings({"unused", "FieldMayBeFinal"})
+	@Option(
+			names = {"--timeout"},
+			description =
+					"Maximum time in milliseconds spent abstracting a single input, after which it is skipped. " +
+					"Default: no limit."
+	)
+	long timeout = 0;
+
+	@SuppressWarnings({"unused", "FieldMayBeFinal"})
+	@Option(
+			names = {"--max-length"},
+			description =
+					"Maximum length in characters of an input, longer inputs are skipped without being parsed. " +
+					"Default: no limit."
+	)
+	int maxLength = 0;
+
+	@SuppressWarnings({"unused", "FieldMayBeFinal"})
+	@Option(
+			names = {"--max-tokens"},
+			description =
+					"Maximum number of tokens of an input, inputs with more tokens are skipped. " +
+					"Default: no limit."
+	)
+	int maxTokens = 0;
+
+	@SuppressWarnings({"unused", "FieldMayBeFinal"})
+	@Option(
+			names = {"--stats"},
+			description =
+					"Print the time spent in each stage of the abstraction, the numbers of tokens and identifiers, " +
+					"and the slowest inputs once all inputs have been abstracted."
+	)
+	boolean stats = false;
+
+	@SuppressWarnings({"unused", "FieldMayBeFinal"})
+	@Option(
+			names = {"--mapping-format"},
+			description =
+					"Format of the mapping file written next to each output file: " +
+					"CSV writes the identifiers and their IDs as two comma-separated lines, " +
+					"BINARY writes them in the compact format read by MappingReader. " +
+					"Default: CSV."
+	)
+	MappingWriter.Format mappingFormat = MappingWriter.Format.CSV;
+
+	@SuppressWarnings({"unused", "FieldMayBeFinal"})
+	@Option(
+			names = {"--split-threshold"},
+			description =
+					"Minimum length in characters of an input whose class members are parsed in parallel, " +
+					"which only applies at class granularity when lexing with ANTLR. " +
+					"Default: inputs are parsed at once."
+	)
+	int splitThreshold = 0;
+
+	@SuppressWarnings({"unused", "FieldMayBeFinal"})
+	@Option(
+			names = {"--lexer-state"},
+			description =
+					"File in which the state of the lexer is kept between runs. " +
+					"If the file exists, the state is restored on startup, and it is saved on exit."
+	)
+	Path lexerState;
+
+	@SuppressWarnings({"unused", "FieldMayBeFinal"})
+	@Option(
+			names = {"--mine"},
+			paramLabel = "<top>",
+			description =
+					"Instead of abstracting the input, find its most frequent identifiers and literals, " +
+					"and write the given number of them per ID family to the output as an idioms file."
+	)
+	int mine = 0;
+
+	Metrics metrics;
+	Slowest slowest;
+
+	@SuppressWarnings({"unused", "FieldMayBeFinal"})
+	@Option(
+			names = {"--server"},
+			description =
+					"Keep running and serve abstraction requests over TCP on the loopback interface, " +
+					"instead of abstracting an input."
+	)
+	boolean server = false;
+
+	@SuppressWarnings({"unused", "FieldMayBeFinal"})
+	@Option(
+			names = {"-p", "--port"},
+			description =
+					"Port on which the server listens. " +
+					"If 0, a free port is chosen and printed on startup. " +
+					"Default: ${DEFAULT-VALUE}."
+	)
+	int port = 7439;
+
 	@Override
 	public Integer call() throws Exception {
-		if (Files.notExists(input))
+		if (!server && input == null)
+			throw new ParameterException(spec.commandLine(), "Missing required parameter: '<input>'");
+		boolean stdin = jsonl && input != null && input.toString().equals(STDIN);
+		if (!server && !stdin && Files.notExists(input))
 			throw new NoSuchFileException(input.toString());
+		if (timeout < 0 || maxLength < 0 || maxTokens < 0 || splitThreshold < 0)
+			throw new ParameterException(spec.commandLine(), "Invalid value for options '--timeout', '--max-length', '--max-tokens' and '--split-threshold': must not be negative");
 
 		Set<String> keywords;
 		if (idioms == null) {
@@ -77,19 +302,403 @@ public class Main implements Callable<Integer> {
 			keywords = lines.collect(Collectors.toSet());
 		}
 
+		@Cleanup ResultCache results = cache != null
+				? ResultCache.builder().directory(cache).maxSize(cacheSize << 20).build()
+				: null;
+
+		if (stats && !server) {
+			metrics = new Metrics();
+			slowest = new Slowest();
+		}
+
+		Abstractor abstractor = Abstractor.builder()
+				.granularity(granularity)
+				.idioms(keywords)
+				.lexing(lexing)
+				.parsing(parsing)
+				.cache(results)
+				.listener(metrics)
+				.timeout(Duration.ofMillis(timeout))
+				.maxLength(maxLength)
+				.maxTokens(maxTokens)
+				.mappingFormat(mappingFormat)
+				.splitThreshold(splitThreshold)
+				.build();
+
+		if (lexerState != null && Files.exists(lexerState)) {
+			try {
+				LexerCache.restore(lexerState);
+			} catch (IOException ex) {
+				throw new ParameterException(spec.commandLine(), "Invalid value for option '--lexer-state': " + ex.getMessage());
+			}
+		}
+
+		if (server) {
+			return serve(abstractor);
+		}
+
+		try {
+			return execute(abstractor, stdin);
+		} finally {
+			if (lexerState != null) {
+				LexerCache.snapshot(lexerState);
+			}
+			if (metrics != null) {
+				PrintWriter err = spec.commandLine().getErr();
+				metrics.print(err);
+				slowest.print(err);
+			}
+		}
+	}
+
+	private int execute(Abstractor abstractor, boolean stdin) throws Exception {
+		if (mine > 0) {
+			return mine(abstractor, stdin);
+		}
+
+		if (jsonl) {
+			return stream(abstractor, stdin);
+		}
+
+		if (list || Files.isDirectory(input)) {
+			return batch(abstractor);
+		}
+
 		if (output == null) {
-			Abstractor.abstractCode(granularity, input, keywords);
+			abstractor.abstractCode(input);
 		} else {
 			Path parent = output.getParent();
 			if (parent != null && Files.notExists(parent)) {
 				Files.createDirectories(parent);
 			}
-			Abstractor.abstractCode(granularity, input, output, keywords);
+			abstractor.abstractCode(input, output);
 		}
 
 		return 0;
 	}
 
+	private int batch(Abstractor abstractor) throws Exception {
+		if (output == null)
+			throw new ParameterException(spec.commandLine(), "Missing required option: '--output' when abstracting multiple files");
+		if (threads < 1)
+			throw new ParameterException(spec.commandLine(), "Invalid value for option '--threads': must be positive");
+
+		Path root = list ? input.toAbsolutePath().getParent() : input.toAbsolutePath();
+		List<Path> sources = sources(root);
+
+		PrintWriter err = spec.commandLine().getErr();
+		AtomicInteger failed = new AtomicInteger();
+		AtomicInteger skipped = new AtomicInteger();
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, Math.max(sources.size(), 1)));
+		try {
+			List<Future<?>> futures = new ArrayList<>(sources.size());
+			for (Path source: sources) {
+				Path target = output.resolve(relativize(root, source));
+				futures.add(executor.submit(() -> {
+					try {
+						Path parent = target.getParent();
+						if (parent != null) Files.createDirectories(parent);
+						long start = System.nanoTime();
+						abstractor.abstractCode(source, target);
+						if (slowest != null) slowest.record(source.toString(), System.nanoTime() - start);
+					} catch (SkippedException ex) {
+						skipped.incrementAndGet();
+						report(source.toString(), ex, err);
+					} catch (Exception | StackOverflowError ex) {
+						failed.incrementAndGet();
+						report(source.toString(), ex, err);
+					}
+				}));
+			}
+			for (Future<?> future: futures) future.get();
+		} finally {
+			executor.shutdown();
+		}
+
+		int failures = failed.get();
+		int skips = skipped.get();
+		int successes = sources.size() - failures - skips;
+		err.printf("Abstracted %d file(s): %d succeeded, %d failed", sources.size(), successes, failures);
+		if (skips > 0) err.printf(", %d skipped", skips);
+		err.println();
+		err.flush();
+		return failures + skips == 0 ? 0 : 1;
+	}
+
+	private List<Path> sources(Path root) throws IOException {
+		if (list) {
+			@Cleanup Stream<String> lines = Files.lines(input);
+			return lines.filter(line -> !line.isBlank())
+					.map(String::strip)
+					.map(root::resolve)
+					.map(Path::normalize)
+					.collect(Collectors.toList());
+		} else if (Files.isDirectory(input)) {
+			PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + glob);
+			@Cleanup Stream<Path> walk = Files.walk(root);
+			return walk.filter(Files::isRegularFile)
+					.filter(path -> matcher.matches(root.relativize(path)))
+					.sorted()
+					.collect(Collectors.toList());
+		} else {
+			return List.of(input);
+		}
+	}
+
+	/*
+	 * Mines the idioms of the input files, or of the JSON Lines records. Each
+	 * worker takes the next input, and counts the occurrences in a miner of
+	 * its own, all of which are merged in the end. The inputs are abstracted
+	 * without idioms, so that the idioms given with the input do not hide
+	 * any identifier.
+	 */
+	private int mine(Abstractor abstractor, boolean stdin) throws Exception {
+		if (output == null)
+			throw new ParameterException(spec.commandLine(), "Missing required option: '--output' when mining idioms");
+		if (threads < 1)
+			throw new ParameterException(spec.commandLine(), "Invalid value for option '--threads': must be positive");
+
+		@Cleanup LineNumberReader reader = !jsonl ? null : new LineNumberReader(stdin
+				? new InputStreamReader(System.in, StandardCharsets.UTF_8)
+				: Files.newBufferedReader(input, StandardCharsets.UTF_8));
+		// each input is named like in the error messages of the other modes
+		Iterator<Map.Entry<String, Callable<String>>> inputs;
+		if (jsonl) {
+			// the lines are read as the records are taken, so the reader is on the line of the record
+			inputs = reader.lines()
+					.filter(line -> !line.isBlank())
+					.<Map.Entry<String, Callable<String>>>map(line -> Map.entry(
+							"line " + reader.getLineNumber(), () -> Json.field(line, field)
+					))
+					.iterator();
+		} else {
+			Path root = list ? input.toAbsolutePath().getParent() : input.toAbsolutePath();
+			inputs = sources(root).stream()
+					.<Map.Entry<String, Callable<String>>>map(source -> Map.entry(
+							source.toString(), () -> Files.readString(source)
+					))
+					.iterator();
+		}
+
+		Abstractor plain = abstractor.toBuilder().idioms(null).build();
+		AtomicInteger succeeded = new AtomicInteger();
+		AtomicInteger failed = new AtomicInteger();
+		PrintWriter err = spec.commandLine().getErr();
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		IdiomMiner miner = new IdiomMiner(mine);
+		try {
+			List<Future<IdiomMiner>> workers = new ArrayList<>(threads);
+			for (int i = 0; i < threads; i++) {
+				workers.add(executor.submit(() -> {
+					IdiomMiner local = new IdiomMiner(mine);
+					while (true) {
+						Map.Entry<String, Callable<String>> next;
+						synchronized (inputs) {
+							if (!inputs.hasNext()) return local;
+							next = inputs.next();
+						}
+						try {
+							String code = next.getValue().call();
+							if (code == null) throw new IllegalArgumentException("Missing field '" + field + "'");
+							local.add(plain.abstractCode(code));
+							succeeded.incrementAndGet();
+						} catch (Exception | StackOverflowError ex) {
+							failed.incrementAndGet();
+							report(next.getKey(), ex, err);
+						}
+					}
+				}));
+			}
+			for (Future<IdiomMiner> worker: workers) miner.merge(worker.get());
+		} finally {
+			executor.shutdownNow();
+		}
+
+		Path parent = output.getParent();
+		if (parent != null && Files.notExists(parent)) {
+			Files.createDirectories(parent);
+		}
+		int written = miner.write(output);
+		int failures = failed.get();
+		err.printf(
+				"Mined %d input(s): %d succeeded, %d failed, %d idiom(s) written%n",
+				succeeded.get() + failures, succeeded.get(), failures, written
+		);
+		err.flush();
+		return failures == 0 ? 0 : 1;
+	}
+
+	private int serve(Abstractor abstractor) throws Exception {
+		if (input != null || jsonl || list)
+			throw new ParameterException(spec.commandLine(), "Option '--server' does not take an input");
+		if (threads < 1)
+			throw new ParameterException(spec.commandLine(), "Invalid value for option '--threads': must be positive");
+
+		PrintWriter err = spec.commandLine().getErr();
+		@Cleanup Server instance = new Server(abstractor, port, threads);
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+			try {
+				instance.close();
+				if (lexerState != null) LexerCache.snapshot(lexerState);
+			} catch (IOException ignored) {
+			}
+		}));
+		err.printf("Listening on %s:%d%n", InetAddress.getLoopbackAddress().getHostAddress(), instance.getPort());
+		err.flush();
+		instance.serve(err);
+		return 0;
+	}
+
+	private int stream(Abstractor abstractor, boolean stdin) throws Exception {
+		if (list)
+			throw new ParameterException(spec.commandLine(), "Options '--jsonl' and '--list' are mutually exclusive");
+		if (threads < 1)
+			throw new ParameterException(spec.commandLine(), "Invalid value for option '--threads': must be positive");
+
+		if (output != null) {
+			Path parent = output.getParent();
+			if (parent != null && Files.notExists(parent)) {
+				Files.createDirectories(parent);
+			}
+		}
+
+		@Cleanup BufferedReader reader = stdin
+				? new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8))
+				: Files.newBufferedReader(input, StandardCharsets.UTF_8);
+		Writer writer = output != null
+				? Files.newBufferedWriter(output, StandardCharsets.UTF_8)
+				: new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+
+		// records are abstracted in parallel, but written in the order they were read
+		int window = threads * 16;
+		Deque<Future<String>> pending = new ArrayDeque<>(window);
+		int records = 0;
+		AtomicInteger failed = new AtomicInteger();
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			int lineNumber = 0;
+			for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+				lineNumber++;
+				if (line.isBlank()) continue;
+				String record = line;
+				String name = "line " + lineNumber;
+				pending.add(executor.submit(() -> {
+					long start = System.nanoTime();
+					String enriched = enrich(abstractor, record, failed);
+					if (slowest != null) slowest.record(name, System.nanoTime() - start);
+					return enriched;
+				}));
+				records++;
+				if (pending.size() >= window) {
+					write(pending.remove().get(), writer);
+				}
+			}
+			while (!pending.isEmpty()) {
+				write(pending.remove().get(), writer);
+			}
+		} finally {
+			executor.shutdownNow();
+			if (output != null) writer.close();
+			else writer.flush();
+		}
+
+		int failures = failed.get();
+		PrintWriter err = spec.commandLine().getErr();
+		err.printf("Abstracted %d record(s): %d succeeded, %d failed%n", records, records - failures, failures);
+		err.flush();
+		return failures == 0 ? 0 : 1;
+	}
+
+	/*
+	 * Returns the record with the abstraction and its mapping appended to its
+	 * fields, or with an error message if the record could not be abstracted.
+	 * Records which are not well-formed JSON objects are replaced by the error.
+	 */
+	private String enrich(Abstractor abstractor, String record, AtomicInteger failed) {
+		StringBuilder builder = new StringBuilder(record.length() * 2);
+		String code;
+		try {
+			code = Json.field(record, field);
+		} catch (IllegalArgumentException ex) {
+			failed.incrementAndGet();
+			builder.append('{');
+			Json.error("Malformed record: " + ex.getMessage(), builder);
+			return builder.append('}').toString();
+		}
+
+		builder.append(record, 0, record.lastIndexOf('}'));
+		// the record is well-formed, so only whitespace can follow its last field or opening brace
+		while (Character.isWhitespace(builder.charAt(builder.length() - 1))) builder.setLength(builder.length() - 1);
+		if (builder.charAt(builder.length() - 1) != '{') builder.append(',');
+		if (code == null) {
+			failed.incrementAndGet();
+			Json.error("Missing field '" + field + "'", builder);
+		} else if (!Json.abstraction(abstractor, code, builder)) {
+			failed.incrementAndGet();
+		}
+		return builder.append('}').toString();
+	}
+
+	/*
+	 * Prints why an input could not be abstracted, in the same format in
+	 * every mode that carries on with the other inputs.
+	 */
+	private static void report(String input, Throwable cause, PrintWriter err) {
+		String message;
+		if (cause instanceof SkippedException) {
+			message = "skipped (" + cause.getMessage() + ")";
+		} else if (cause instanceof ParseProblemException) {
+			message = "could not be parsed (" + ((ParseProblemException) cause).getProblems().size() + " problems)";
+		} else if (cause instanceof StackOverflowError) {
+			// deeply nested code, which generated files are prone to, exhausts the stack of the parser
+			message = "too deeply nested to be abstracted";
+		} else {
+			message = cause.toString();
+		}
+		synchronized (err) {
+			err.printf("%s: %s%n", input, message);
+		}
+	}
+
+	private static void write(String record, Writer writer) throws IOException {
+		writer.write(record);
+		writer.write('\n');
+	}
+
+	private static Path relativize(Path root, Path source) {
+		if (source.startsWith(root)) return root.relativize(source);
+		Path absolute = source.toAbsolutePath();
+		Path filesystem = absolute.getRoot();
+		return filesystem != null ? filesystem.relativize(absolute) : absolute;
+	}
+
+	/*
+	 * Keeps track of the inputs that took the longest to abstract,
+	 * which are the first candidates when looking for pathological inputs.
+	 */
+	private static final class Slowest {
+
+		private static final int LIMIT = 5;
+
+		private final PriorityQueue<Map.Entry<Long, String>> inputs = new PriorityQueue<>(Map.Entry.comparingByKey());
+
+		synchronized void record(String input, long nanos) {
+			inputs.add(Map.entry(nanos, input));
+			if (inputs.size() > LIMIT) inputs.poll();
+		}
+
+		synchronized void print(PrintWriter out) {
+			if (inputs.isEmpty()) return;
+			List<Map.Entry<Long, String>> sorted = new ArrayList<>(inputs);
+			sorted.sort(Map.Entry.<Long, String>comparingByKey().reversed());
+			out.println("Slowest inputs:");
+			for (Map.Entry<Long, String> entry: sorted) {
+				out.printf(Locale.ROOT, "%10.3f ms  %s%n", entry.getKey() / 1e6, entry.getValue());
+			}
+			out.flush();
+		}
+	}
+
 	public static void main(String[] args) {
 		int code = new CommandLine(new Main())
 				.setExecutionExceptionHandler(new ExecutionExceptionHandler())
@@ -112,6 +721,9 @@ public class Main implements Callable<Integer> {
 				err.println(message);
 				commandLine.usage(err);
 				return exitCode;
+			} else if (ex instanceof SkippedException) {
+				err.printf("Provided file was skipped: %s%n", ex.getMessage());
+				return exitCode;
 			} else if (ex instanceof ParseProblemException) {
 				ParseProblemException ppex = (ParseProblemException) ex;
 				err.println("Provided file could not be parsed, the following problems were reported:\n");
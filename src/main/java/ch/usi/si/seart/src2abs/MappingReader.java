@@ -0,0 +1,225 @@
+package ch.usi.si.seart.src2abs;
+
+import lombok.AccessLevel;
+import lombok.Cleanup;
+import lombok.experimental.FieldDefaults;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Reads the mappings written by a {@link MappingWriter}, in any order.
+ * The file is mapped into memory rather than read, so that opening it only
+ * costs reading its index, and only the pages of the mappings and symbols
+ * that are actually looked up are ever loaded. Files larger than a single
+ * mapped buffer can hold are mapped in several regions. Instances can be
+ * shared between threads.
+ */
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class MappingReader {
+
+	private static final int PREFIXES = Prefix.values().length;
+	private static final int HEADER = MappingWriter.MAGIC.length + 1;
+	private static final int FOOTER = 2 * Long.BYTES;
+
+	int size;
+	int symbols;
+
+	Section mappings;
+	Section dictionary;
+
+	public MappingReader(Path path) throws IOException {
+		@Cleanup FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+		long length = channel.size();
+		if (length < HEADER + FOOTER) throw new IOException("Not a mapping file");
+		ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER);
+		byte[] magic = new byte[MappingWriter.MAGIC.length];
+		header.get(magic);
+		if (!Arrays.equals(magic, MappingWriter.MAGIC))
+			throw new IOException("Not a mapping file");
+		int version = header.get() & 0xFF;
+		if (version != MappingWriter.VERSION)
+			throw new IOException("Unsupported mapping file version: " + version);
+		ByteBuffer footer = channel.map(FileChannel.MapMode.READ_ONLY, length - FOOTER, FOOTER);
+		long symbols = footer.getLong();
+		long count = footer.getLong();
+		if (count < 0 || count > Integer.MAX_VALUE || symbols < 0 || symbols > Integer.MAX_VALUE)
+			throw new IOException("Corrupt mapping file");
+		long mappingBlocks = blocks(count);
+		long symbolBlocks = blocks(symbols);
+		long index = length - FOOTER - (mappingBlocks + symbolBlocks) * Long.BYTES;
+		if (index < HEADER) throw new IOException("Truncated mapping file");
+		long[] mappingOffsets = new long[(int) mappingBlocks];
+		long[] symbolOffsets = new long[(int) symbolBlocks];
+		ByteBuffer offsets = channel.map(FileChannel.MapMode.READ_ONLY, index, (mappingBlocks + symbolBlocks) * Long.BYTES);
+		offsets.asLongBuffer().get(mappingOffsets).get(symbolOffsets);
+		this.size = (int) count;
+		this.symbols = (int) symbols;
+		// the dictionary follows the mappings, and the index follows the dictionary
+		this.mappings = new Section(channel, mappingOffsets, symbolBlocks > 0 ? symbolOffsets[0] : index);
+		this.dictionary = new Section(channel, symbolOffsets, index);
+	}
+
+	/**
+	 * @return the number of mappings in the file
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @param index the position of the mapping in the file
+	 * @return the mapping of original identifiers and literals to their IDs
+	 * @throws IndexOutOfBoundsException if there is no mapping at the position
+	 * @throws IllegalStateException if the mapping is corrupt
+	 */
+	public Map<String, String> mapping(int index) {
+		return Tokenizer.mapping(read(index));
+	}
+
+	/**
+	 * @param index the position of the mapping in the file
+	 * @return a de-abstractor that knows every ID of the mapping
+	 * @throws IndexOutOfBoundsException if there is no mapping at the position
+	 * @throws IllegalStateException if the mapping is corrupt
+	 */
+	public Deabstractor deabstractor(int index) {
+		return new Deabstractor(read(index));
+	}
+
+	private static long blocks(long count) {
+		return (count + MappingWriter.INTERVAL - 1) / MappingWriter.INTERVAL;
+	}
+
+	/*
+	 * Skips over the mappings preceding the requested one in its block, then
+	 * reads the entries twice: once to size the families, and once to fill them.
+	 */
+	private String[][] read(int index) {
+		Objects.checkIndex(index, size);
+		try {
+			ByteBuffer buffer = mappings.locate(index / MappingWriter.INTERVAL);
+			for (int i = index - index % MappingWriter.INTERVAL; i < index; i++) {
+				int entries = readVarInt(buffer);
+				for (int entry = 0; entry < entries * 3; entry++) readVarInt(buffer);
+			}
+			int entries = readVarInt(buffer);
+			int first = buffer.position();
+			int[] sizes = new int[PREFIXES];
+			for (int entry = 0; entry < entries; entry++) {
+				int ordinal = readVarInt(buffer);
+				int number = readVarInt(buffer);
+				int symbol = readVarInt(buffer);
+				if (ordinal >= PREFIXES || number < 1 || symbol >= symbols)
+					throw new IllegalStateException("Corrupt mapping " + index);
+				sizes[ordinal] = Math.max(sizes[ordinal], number + 1);
+			}
+			String[][] originals = new String[PREFIXES][];
+			for (int ordinal = 0; ordinal < PREFIXES; ordinal++) originals[ordinal] = new String[sizes[ordinal]];
+			buffer.position(first);
+			for (int entry = 0; entry < entries; entry++) {
+				int ordinal = readVarInt(buffer);
+				int number = readVarInt(buffer);
+				originals[ordinal][number] = symbol(readVarInt(buffer));
+			}
+			return originals;
+		} catch (BufferUnderflowException | IllegalArgumentException | ArithmeticException ex) {
+			throw new IllegalStateException("Corrupt mapping " + index, ex);
+		}
+	}
+
+	private String symbol(int symbol) {
+		ByteBuffer buffer = dictionary.locate(symbol / MappingWriter.INTERVAL);
+		for (int i = symbol - symbol % MappingWriter.INTERVAL; i < symbol; i++) {
+			int length = readLength(buffer);
+			buffer.position(buffer.position() + length);
+		}
+		byte[] bytes = new byte[readLength(buffer)];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	// a length beyond the end of the buffer is rejected before anything is allocated for it
+	private static int readLength(ByteBuffer buffer) {
+		int length = readVarInt(buffer);
+		if (length > buffer.remaining()) throw new BufferUnderflowException();
+		return length;
+	}
+
+	/*
+	 * Only the non-negative values written by the MappingWriter are accepted:
+	 * their fifth byte, if any, holds the last three of 31 bits.
+	 */
+	private static int readVarInt(ByteBuffer buffer) {
+		int value = 0;
+		for (int shift = 0; ; shift += 7) {
+			int current = buffer.get();
+			if (shift == 28 && (current & ~0x07) != 0)
+				throw new IllegalArgumentException("Malformed variable-length integer");
+			value |= (current & 0x7F) << shift;
+			if ((current & 0x80) == 0) return value;
+		}
+	}
+
+	/*
+	 * A part of the file holding consecutive records, indexed by the offset of
+	 * every INTERVAL-th one. The part is mapped in as few regions as possible,
+	 * each holding whole blocks of records.
+	 */
+	@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+	private static final class Section {
+
+		long[] offsets;
+
+		// mapped regions, and the offset and first block of each
+		ByteBuffer[] regions;
+		long[] starts;
+		int[] firsts;
+
+		private Section(FileChannel channel, long[] offsets, long limit) throws IOException {
+			this.offsets = offsets;
+			List<ByteBuffer> regions = new ArrayList<>();
+			List<Long> starts = new ArrayList<>();
+			List<Integer> firsts = new ArrayList<>();
+			int first = 0;
+			while (first < offsets.length) {
+				long start = offsets[first];
+				int last = first;
+				while (last + 1 < offsets.length && end(last + 1, limit) - start <= Integer.MAX_VALUE) last++;
+				long end = end(last, limit);
+				if (start < HEADER || end < start || end - start > Integer.MAX_VALUE)
+					throw new IOException("Corrupt mapping file index");
+				regions.add(channel.map(FileChannel.MapMode.READ_ONLY, start, end - start));
+				starts.add(start);
+				firsts.add(first);
+				first = last + 1;
+			}
+			this.regions = regions.toArray(new ByteBuffer[0]);
+			this.starts = starts.stream().mapToLong(Long::longValue).toArray();
+			this.firsts = firsts.stream().mapToInt(Integer::intValue).toArray();
+		}
+
+		private long end(int block, long limit) {
+			return block + 1 < offsets.length ? offsets[block + 1] : limit;
+		}
+
+		// duplicates have a position of their own, which keeps concurrent reads apart
+		private ByteBuffer locate(int block) {
+			int region = Arrays.binarySearch(firsts, block);
+			if (region < 0) region = -region - 2;
+			ByteBuffer buffer = regions[region].duplicate();
+			buffer.position(Math.toIntExact(offsets[block] - starts[region]));
+			return buffer;
+		}
+	}
+}
@@ -0,0 +1,182 @@
+package ch.usi.si.seart.src2abs;
+
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes the mappings of any number of abstractions to a compact binary file,
+ * which a {@link MappingReader} can access at random without reading it first.
+ * The file starts with the {@link #MAGIC} bytes followed by a format version
+ * byte. Each mapping is then stored as its number of entries followed by the
+ * entries, each of which consists of the ordinal of the {@link Prefix} and
+ * the number of the ID, and the symbol of the identifier or literal. The
+ * identifiers and literals recur throughout a corpus, and are only written
+ * once per file: symbols are numbered in order of first appearance, and their
+ * dictionary follows the mappings, as the length and bytes of each UTF-8
+ * encoded string. Numbers are encoded as unsigned variable-length integers
+ * (LEB128), like in the {@link SequenceWriter}, so that most take a single
+ * byte. The file ends with the offsets of every {@value #INTERVAL}th mapping
+ * and of every {@value #INTERVAL}th symbol, followed by the number of symbols
+ * and the number of mappings, as big-endian longs.
+ * <p>
+ * The dictionary is kept in memory until the file is closed, so files are
+ * best written per shard of a corpus rather than for the corpus as a whole.
+ * <p>
+ * Unlike the mapping of a {@link Abstractor.Result}, the mappings written from
+ * the results themselves include every ID of an identifier that has been
+ * replaced in more than one family.
+ *
+ * @see MappingReader
+ */
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class MappingWriter implements Closeable {
+
+	static final byte[] MAGIC = {'S', '2', 'A', 'M'};
+	static final int VERSION = 2;
+
+	// the index only locates every so many mappings and symbols, the reader skips over the others
+	static final int INTERVAL = 32;
+
+	/**
+	 * The formats in which the mapping of an abstraction can be written next to it.
+	 */
+	public enum Format {
+		CSV, BINARY
+	}
+
+	DataOutputStream out;
+
+	@NonFinal
+	long[] offsets = new long[64];
+
+	@NonFinal
+	int count = 0;
+
+	Map<String, Integer> dictionary = new HashMap<>();
+	List<String> symbols = new ArrayList<>();
+
+	// DataOutputStream counts the bytes written in an int, which overflows past 2GB
+	@NonFinal
+	long position = 0;
+
+	public MappingWriter(Path path) throws IOException {
+		this(Files.newOutputStream(path));
+	}
+
+	public MappingWriter(OutputStream out) throws IOException {
+		this.out = new DataOutputStream(new BufferedOutputStream(out));
+		write(MAGIC);
+		write(VERSION);
+	}
+
+	/**
+	 * @param result the abstraction whose mapping is written
+	 * @throws IOException if the mapping can not be written
+	 */
+	public void write(Abstractor.Result result) throws IOException {
+		write(result.getOriginals());
+	}
+
+	/**
+	 * @param mapping the mapping of original identifiers and literals to their IDs
+	 * @throws IOException if the mapping can not be written
+	 * @throws IllegalArgumentException if the mapping contains a value that is not an ID
+	 */
+	public void write(Map<String, String> mapping) throws IOException {
+		write(new Deabstractor(mapping).getOriginals());
+	}
+
+	void write(String[][] originals) throws IOException {
+		if (count % INTERVAL == 0) {
+			int block = count / INTERVAL;
+			if (block == offsets.length) offsets = Arrays.copyOf(offsets, block * 2);
+			offsets[block] = position;
+		}
+		int entries = 0;
+		for (String[] family: originals) {
+			for (int number = 1; number < family.length; number++) {
+				if (family[number] != null) entries++;
+			}
+		}
+		writeVarInt(entries);
+		for (int ordinal = 0; ordinal < originals.length; ordinal++) {
+			String[] family = originals[ordinal];
+			for (int number = 1; number < family.length; number++) {
+				if (family[number] == null) continue;
+				writeVarInt(ordinal);
+				writeVarInt(number);
+				writeVarInt(symbol(family[number]));
+			}
+		}
+		count++;
+	}
+
+	public int size() {
+		return count;
+	}
+
+	public void flush() throws IOException {
+		out.flush();
+	}
+
+	/**
+	 * Writes the dictionary and the index, and closes the file.
+	 * Mappings can no longer be written afterwards.
+	 */
+	@Override
+	public void close() throws IOException {
+		long[] positions = new long[(symbols.size() + INTERVAL - 1) / INTERVAL];
+		for (int symbol = 0; symbol < symbols.size(); symbol++) {
+			if (symbol % INTERVAL == 0) positions[symbol / INTERVAL] = position;
+			byte[] bytes = symbols.get(symbol).getBytes(StandardCharsets.UTF_8);
+			writeVarInt(bytes.length);
+			write(bytes);
+		}
+		int blocks = (count + INTERVAL - 1) / INTERVAL;
+		for (int block = 0; block < blocks; block++) out.writeLong(offsets[block]);
+		for (long offset: positions) out.writeLong(offset);
+		out.writeLong(symbols.size());
+		out.writeLong(count);
+		out.close();
+	}
+
+	private int symbol(String original) {
+		Integer symbol = dictionary.putIfAbsent(original, dictionary.size());
+		if (symbol != null) return symbol;
+		symbols.add(original);
+		return symbols.size() - 1;
+	}
+
+	private void writeVarInt(int value) throws IOException {
+		while ((value & ~0x7F) != 0) {
+			write((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		write(value);
+	}
+
+	private void write(int value) throws IOException {
+		out.write(value);
+		position++;
+	}
+
+	private void write(byte[] bytes) throws IOException {
+		out.write(bytes);
+		position += bytes.length;
+	}
+}
@@ -0,0 +1,127 @@
+package ch.usi.si.seart.src2abs;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.TokenSource;
+
+import java.util.Arrays;
+
+/**
+ * The time spent in each stage of a single abstraction, and the amounts of
+ * tokens and identifiers it processed. Measurements are only taken if an
+ * {@link AbstractionListener} is configured, which receives them once the
+ * abstraction completes or fails.
+ */
+@Getter
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class Measurement {
+
+	public enum Stage {
+		CLEAN, PARSE, LEX, TOKENIZE, TOTAL
+	}
+
+	int characters;
+
+	@Getter(AccessLevel.NONE)
+	long[] nanos = new long[Stage.values().length];
+
+	@Getter(AccessLevel.NONE)
+	int[] identifiers = new int[Prefix.values().length];
+
+	@Getter(AccessLevel.NONE)
+	long start;
+
+	@NonFinal
+	@Getter(AccessLevel.NONE)
+	long last;
+
+	@NonFinal
+	int tokens = 0;
+
+	@NonFinal
+	boolean cached = false;
+
+	// whether the identifiers were classified from the tokens alone, rather than by parsing
+	@NonFinal
+	boolean heuristic = false;
+
+	@NonFinal
+	boolean failed = false;
+
+	Measurement(int characters) {
+		this.characters = characters;
+		Arrays.fill(nanos, -1);
+		this.start = System.nanoTime();
+		this.last = start;
+	}
+
+	/**
+	 * @param stage the stage of the abstraction
+	 * @return the time spent in the stage in nanoseconds, or {@code -1} if the stage was not reached
+	 */
+	public long getNanos(Stage stage) {
+		return nanos[stage.ordinal()];
+	}
+
+	/**
+	 * @param prefix the family of IDs
+	 * @return the number of distinct identifiers or literals replaced with IDs of the family
+	 */
+	public int getIdentifiers(Prefix prefix) {
+		return identifiers[prefix.ordinal()];
+	}
+
+	// records the time elapsed since the previous stage ended as spent in the given stage
+	void lap(Stage stage) {
+		long now = System.nanoTime();
+		nanos[stage.ordinal()] = Math.max(nanos[stage.ordinal()], 0) + now - last;
+		last = now;
+	}
+
+	/*
+	 * Counts the tokens read from the source, and times reading them as LEX.
+	 * Lexing is interleaved with tokenization, so the time spent in the source
+	 * is taken out of the lap of the stage that reads it.
+	 */
+	TokenSource source(TokenSource source) {
+		return new ForwardingTokenSource(source) {
+			@Override
+			public Token nextToken() {
+				long start = System.nanoTime();
+				Token token = super.nextToken();
+				long elapsed = System.nanoTime() - start;
+				nanos[Stage.LEX.ordinal()] = Math.max(nanos[Stage.LEX.ordinal()], 0) + elapsed;
+				last += elapsed;
+				if (token.getType() != Token.EOF) tokens++;
+				return token;
+			}
+		};
+	}
+
+	void count(Tokenizer tokenizer) {
+		for (Prefix prefix: Prefix.values()) {
+			identifiers[prefix.ordinal()] = tokenizer.count(prefix);
+		}
+	}
+
+	void tokens(int tokens) {
+		this.tokens = tokens;
+	}
+
+	void cached() {
+		this.cached = true;
+	}
+
+	void heuristic() {
+		this.heuristic = true;
+	}
+
+	Measurement finish(boolean failed) {
+		this.failed = failed;
+		nanos[Stage.TOTAL.ordinal()] = System.nanoTime() - start;
+		return this;
+	}
+}
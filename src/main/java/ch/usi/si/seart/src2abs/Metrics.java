@@ -0,0 +1,217 @@
+package ch.usi.si.seart.src2abs;
+
+import com.github.javaparser.ParseProblemException;
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Aggregates the measurements of all abstractions: the number of abstractions
+ * and failures, the tokens and identifiers processed, and a latency histogram
+ * for every stage. Recording a measurement is lock-free and does not allocate,
+ * so instances can be shared by any number of concurrent abstractors.
+ */
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class Metrics implements AbstractionListener {
+
+	private static final Measurement.Stage[] STAGES = Measurement.Stage.values();
+	private static final Prefix[] PREFIXES = Prefix.values();
+
+	LongAdder abstractions = new LongAdder();
+	LongAdder failures = new LongAdder();
+	LongAdder parseFailures = new LongAdder();
+	LongAdder skipped = new LongAdder();
+	LongAdder cached = new LongAdder();
+	LongAdder heuristic = new LongAdder();
+	LongAdder characters = new LongAdder();
+	LongAdder tokens = new LongAdder();
+	LongAdder[] identifiers = new LongAdder[PREFIXES.length];
+	Histogram[] latencies = new Histogram[STAGES.length];
+
+	public Metrics() {
+		for (int i = 0; i < identifiers.length; i++) identifiers[i] = new LongAdder();
+		for (int i = 0; i < latencies.length; i++) latencies[i] = new Histogram();
+	}
+
+	@Override
+	public void completed(Measurement measurement) {
+		record(measurement);
+	}
+
+	@Override
+	public void failed(Measurement measurement, RuntimeException cause) {
+		record(measurement);
+		failures.increment();
+		if (cause instanceof ParseProblemException) parseFailures.increment();
+		if (cause instanceof SkippedException) skipped.increment();
+	}
+
+	private void record(Measurement measurement) {
+		abstractions.increment();
+		if (measurement.isCached()) cached.increment();
+		if (measurement.isHeuristic()) heuristic.increment();
+		characters.add(measurement.getCharacters());
+		tokens.add(measurement.getTokens());
+		for (Prefix prefix: PREFIXES) {
+			identifiers[prefix.ordinal()].add(measurement.getIdentifiers(prefix));
+		}
+		for (Measurement.Stage stage: STAGES) {
+			long nanos = measurement.getNanos(stage);
+			if (nanos >= 0) latencies[stage.ordinal()].record(nanos);
+		}
+	}
+
+	public long getAbstractions() {
+		return abstractions.sum();
+	}
+
+	public long getFailures() {
+		return failures.sum();
+	}
+
+	public long getParseFailures() {
+		return parseFailures.sum();
+	}
+
+	public long getSkipped() {
+		return skipped.sum();
+	}
+
+	public long getCached() {
+		return cached.sum();
+	}
+
+	public long getHeuristic() {
+		return heuristic.sum();
+	}
+
+	public long getCharacters() {
+		return characters.sum();
+	}
+
+	public long getTokens() {
+		return tokens.sum();
+	}
+
+	public long getIdentifiers(Prefix prefix) {
+		return identifiers[prefix.ordinal()].sum();
+	}
+
+	public Histogram getLatency(Measurement.Stage stage) {
+		return latencies[stage.ordinal()];
+	}
+
+	/**
+	 * Prints a human-readable summary of the metrics, with latencies in milliseconds.
+	 *
+	 * @param out the destination of the summary
+	 */
+	public void print(PrintWriter out) {
+		out.printf(
+				"Abstractions: %d (%d failed, %d could not be parsed, %d skipped, %d cached, %d heuristic)%n",
+				getAbstractions(), getFailures(), getParseFailures(), getSkipped(), getCached(), getHeuristic()
+		);
+		out.printf("Characters: %d, tokens: %d%n", getCharacters(), getTokens());
+		out.print("Identifiers:");
+		for (Prefix prefix: PREFIXES) {
+			out.printf(" %s %d", prefix, getIdentifiers(prefix));
+		}
+		out.println();
+		out.printf("%-10s %10s %10s %10s %10s %10s %10s%n", "Stage", "count", "mean", "p50", "p90", "p99", "max");
+		for (Measurement.Stage stage: STAGES) {
+			Histogram histogram = getLatency(stage);
+			out.printf(
+					Locale.ROOT,
+					"%-10s %10d %10.3f %10.3f %10.3f %10.3f %10.3f%n",
+					stage.name().toLowerCase(Locale.ROOT),
+					histogram.getCount(),
+					histogram.getMean() / 1e6,
+					histogram.percentile(0.5) / 1e6,
+					histogram.percentile(0.9) / 1e6,
+					histogram.percentile(0.99) / 1e6,
+					histogram.getMax() / 1e6
+			);
+		}
+		out.flush();
+	}
+
+	@Override
+	public String toString() {
+		StringWriter writer = new StringWriter();
+		print(new PrintWriter(writer));
+		return writer.toString();
+	}
+
+	/**
+	 * A histogram of non-negative values with a fixed number of buckets. Each
+	 * power of two is split into four buckets, so percentiles are reported
+	 * with an error of at most 25%, regardless of the range of the values.
+	 */
+	@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+	public static class Histogram {
+
+		private static final int SUB_BUCKETS = 4;
+		private static final int SUB_BUCKET_BITS = 2;
+
+		AtomicLongArray buckets = new AtomicLongArray(SUB_BUCKETS + (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS);
+		LongAdder count = new LongAdder();
+		LongAdder sum = new LongAdder();
+		AtomicLong max = new AtomicLong();
+
+		void record(long value) {
+			buckets.incrementAndGet(bucket(value));
+			count.increment();
+			sum.add(value);
+			max.accumulateAndGet(value, Math::max);
+		}
+
+		public long getCount() {
+			return count.sum();
+		}
+
+		public double getMean() {
+			long total = count.sum();
+			return total == 0 ? 0 : (double) sum.sum() / total;
+		}
+
+		public long getMax() {
+			return max.get();
+		}
+
+		/**
+		 * @param quantile the quantile, between 0 and 1
+		 * @return the upper bound of the bucket containing the quantile, or 0 if nothing has been recorded
+		 */
+		public long percentile(double quantile) {
+			long total = count.sum();
+			if (total == 0) return 0;
+			long rank = (long) Math.ceil(quantile * total);
+			long seen = 0;
+			for (int bucket = 0; bucket < buckets.length(); bucket++) {
+				seen += buckets.get(bucket);
+				if (seen >= rank) return Math.min(upperBound(bucket), getMax());
+			}
+			return getMax();
+		}
+
+		private static int bucket(long value) {
+			if (value < SUB_BUCKETS) return (int) Math.max(value, 0);
+			int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+			int sub = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+			return SUB_BUCKETS + (exponent - SUB_BUCKET_BITS) * SUB_BUCKETS + sub;
+		}
+
+		private static long upperBound(int bucket) {
+			if (bucket < SUB_BUCKETS) return bucket;
+			int exponent = (bucket - SUB_BUCKETS) / SUB_BUCKETS + SUB_BUCKET_BITS;
+			int sub = (bucket - SUB_BUCKETS) % SUB_BUCKETS;
+			return ((long) (SUB_BUCKETS + sub + 1) << (exponent - SUB_BUCKET_BITS)) - 1;
+		}
+	}
+}
@@ -1,23 +1,42 @@
 package ch.usi.si.seart.src2abs;
 
-import com.github.javaparser.StaticJavaParser;
+import com.github.javaparser.JavaParser;
+import com.github.javaparser.ParseProblemException;
+import com.github.javaparser.ParseResult;
+import com.github.javaparser.ParseStart;
+import com.github.javaparser.Providers;
 import com.github.javaparser.ast.Node;
+import com.github.javaparser.ast.body.ConstructorDeclaration;
 import com.github.javaparser.ast.body.MethodDeclaration;
-import com.github.javaparser.ast.expr.AnnotationExpr;
+import com.github.javaparser.ast.expr.Expression;
+import com.github.javaparser.ast.expr.FieldAccessExpr;
+import com.github.javaparser.ast.expr.MarkerAnnotationExpr;
 import com.github.javaparser.ast.expr.MethodCallExpr;
 import com.github.javaparser.ast.expr.MethodReferenceExpr;
-import com.github.javaparser.ast.type.Type;
+import com.github.javaparser.ast.expr.NormalAnnotationExpr;
+import com.github.javaparser.ast.expr.SingleMemberAnnotationExpr;
+import com.github.javaparser.ast.type.ClassOrInterfaceType;
+import com.github.javaparser.ast.type.PrimitiveType;
+import com.github.javaparser.ast.type.TypeParameter;
+import com.github.javaparser.ast.type.VarType;
+import com.github.javaparser.ast.type.VoidType;
+import com.github.javaparser.ast.visitor.VoidVisitorAdapter;
 import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+import org.antlr.v4.runtime.Token;
 
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
-import java.util.Optional;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 import java.util.function.Function;
-import java.util.stream.Stream;
 
 @Getter
 @RequiredArgsConstructor
@@ -28,20 +47,43 @@ class Parser {
 		METHOD, CLASS
 	}
 
+	/*
+	 * How identifiers are classified: JAVAPARSER parses the code and fails
+	 * if it can not be parsed, HEURISTIC classifies them from the tokens
+	 * alone without parsing, and FALLBACK parses the code, but classifies
+	 * the identifiers heuristically if it can not be parsed.
+	 */
+	public enum Parsing {
+		JAVAPARSER, FALLBACK, HEURISTIC
+	}
+
 	Set<String> types = new HashSet<>();
 	Set<String> methods = new HashSet<>();
 	Set<String> annotations = new HashSet<>();
 
 	Granularity granularity;
 
+	@Getter(AccessLevel.NONE)
+	JavaParser javaParser;
+
+	@Getter(AccessLevel.NONE)
+	Guard guard;
+
+	@NonFinal
+	Node node;
+
+	Parser(Granularity granularity, JavaParser javaParser) {
+		this(granularity, javaParser, Guard.NONE);
+	}
+
 	public void parse(String sourceCode) {
 		Function<String, Node> parsingFunction;
 		switch (granularity) {
 			case CLASS:
-				parsingFunction = StaticJavaParser::parse;
+				parsingFunction = code -> parse(ParseStart.COMPILATION_UNIT, code);
 				break;
 			case METHOD:
-				parsingFunction = StaticJavaParser::parseMethodDeclaration;
+				parsingFunction = code -> parse(ParseStart.METHOD_DECLARATION, code);
 				break;
 			default:
 				throw new UnsupportedOperationException("Parsing not supported at '" + granularity + "'");
@@ -51,53 +93,163 @@ class Parser {
 	}
 
 	public void parse(String sourceCode, Function<String, Node> parsingFunction) {
-		Node node = parsingFunction.apply(sourceCode);
+		node = parsingFunction.apply(sourceCode);
 		traverseNode(node);
 	}
 
+	/*
+	 * Parses a compilation unit with its members parsed in parallel on the
+	 * pool, see Splitter, given the tokens of the Lexer. Returns false, having
+	 * parsed nothing, if the unit has to be parsed at once instead.
+	 */
+	public boolean parseSplit(String sourceCode, List<Token> tokens, ForkJoinPool pool) {
+		Node unit = Splitter.parse(sourceCode, tokens, javaParser.getParserConfiguration(), guard, pool);
+		if (unit == null) return false;
+		node = unit;
+		traverseNode(node);
+		return true;
+	}
+
+	/*
+	 * Parses a compilation unit once and returns a parser for each of its
+	 * methods (and constructors, if requested) in the order they appear in,
+	 * with the same names collected as if it had been parsed on its own at
+	 * METHOD granularity.
+	 */
+	public List<Parser> parseCallables(String sourceCode, boolean constructors) {
+		node = parse(ParseStart.COMPILATION_UNIT, sourceCode);
+		List<Parser> callables = new ArrayList<>();
+		node.walk(Node.TreeTraversal.PREORDER, child -> {
+			if (child instanceof MethodDeclaration || constructors && child instanceof ConstructorDeclaration) {
+				Parser callable = new Parser(Granularity.METHOD, javaParser, guard);
+				callable.node = child;
+				callable.traverseNode(child);
+				callables.add(callable);
+			}
+		});
+		return callables;
+	}
+
+	private <N extends Node> N parse(ParseStart<N> start, String sourceCode) {
+		Reader reader = guard.reader(new StringReader(sourceCode));
+		ParseResult<N> result = javaParser.parse(start, Providers.provider(reader));
+		guard.checkDeadline();
+		return result.getResult()
+				.filter(node -> result.isSuccessful())
+				.orElseThrow(() -> new ParseProblemException(result.getProblems()));
+	}
+
 	private void traverseNode(Node node) {
-		// create set of annotations
-		node.findAll(AnnotationExpr.class).stream()
-				.map(AnnotationExpr::getNameAsString)
-				.forEach(annotations::add);
-
-		// create set of types
-		node.findAll(Type.class).stream()
-				.flatMap(type -> {
-					String[] allTypes = filterString(type.asString());
-					return Stream.of(allTypes);
-				})
-				.forEach(types::add);
-
-		// create set of methods and insert declared methods
-		node.findAll(MethodDeclaration.class).stream()
-				.map(MethodDeclaration::getNameAsString)
-				.forEach(methods::add);
-
-		// insert referenced methods into methods set
-		node.findAll(MethodCallExpr.class).stream()
-				.map(MethodCallExpr::getNameAsString)
-				.forEach(methods::add);
-
-		// insert scope of methods into types
-		node.findAll(MethodCallExpr.class).stream()
-				.map(MethodCallExpr::getScope)
-				.flatMap(Optional::stream)
-				.filter(expression -> expression.isFieldAccessExpr() || expression.isNameExpr())
-				.forEach(expression -> {
-					String exprStr = expression.toString();
-					String[] fragments = exprStr.split("\\.");
-					String[] letters = fragments[fragments.length - 1].split("");
-					if (!letters[0].equals(letters[0].toLowerCase())) {
-						String[] allTypes = filterString(exprStr);
-						types.addAll(Arrays.asList(allTypes));
-					}
-				});
-
-		// insert scope of methods into types
-		node.findAll(MethodReferenceExpr.class).stream()
-				.map(MethodReferenceExpr::getIdentifier)
-				.forEach(methods::add);
+		node.accept(new Visitor(), null);
+	}
+
+	/*
+	 * Collects the annotation, type and method names in a single pass over the tree.
+	 * Names are taken directly from the nodes, so that nothing has to be printed
+	 * with the pretty-printer and then split back into its constituents.
+	 */
+	private class Visitor extends VoidVisitorAdapter<Void> {
+
+		@Override
+		public void visit(MarkerAnnotationExpr expression, Void arg) {
+			annotations.add(expression.getNameAsString());
+			super.visit(expression, arg);
+		}
+
+		@Override
+		public void visit(SingleMemberAnnotationExpr expression, Void arg) {
+			annotations.add(expression.getNameAsString());
+			super.visit(expression, arg);
+		}
+
+		@Override
+		public void visit(NormalAnnotationExpr expression, Void arg) {
+			annotations.add(expression.getNameAsString());
+			super.visit(expression, arg);
+		}
+
+		@Override
+		public void visit(ClassOrInterfaceType type, Void arg) {
+			// the scope and type arguments are visited as types of their own
+			types.add(type.getNameWithScope());
+			super.visit(type, arg);
+		}
+
+		@Override
+		public void visit(PrimitiveType type, Void arg) {
+			types.add(type.asString());
+			super.visit(type, arg);
+		}
+
+		@Override
+		public void visit(VoidType type, Void arg) {
+			types.add(type.asString());
+			super.visit(type, arg);
+		}
+
+		@Override
+		public void visit(VarType type, Void arg) {
+			types.add(type.asString());
+			super.visit(type, arg);
+		}
+
+		@Override
+		public void visit(TypeParameter type, Void arg) {
+			types.add(type.getNameAsString());
+			super.visit(type, arg);
+		}
+
+		@Override
+		public void visit(MethodDeclaration declaration, Void arg) {
+			methods.add(declaration.getNameAsString());
+			super.visit(declaration, arg);
+		}
+
+		@Override
+		public void visit(MethodCallExpr expression, Void arg) {
+			methods.add(expression.getNameAsString());
+			// insert scope of methods into types
+			expression.getScope()
+					.filter(scope -> scope.isFieldAccessExpr() || scope.isNameExpr())
+					.ifPresent(this::addScope);
+			super.visit(expression, arg);
+		}
+
+		@Override
+		public void visit(MethodReferenceExpr expression, Void arg) {
+			methods.add(expression.getIdentifier());
+			super.visit(expression, arg);
+		}
+
+		private void addScope(Expression scope) {
+			String qualified = qualifiedName(scope);
+			if (qualified != null) {
+				int dot = qualified.lastIndexOf('.');
+				char first = qualified.charAt(dot + 1);
+				if (Character.toLowerCase(first) != first) types.add(qualified);
+			} else {
+				String exprStr = scope.toString();
+				String[] fragments = exprStr.split("\\.");
+				String[] letters = fragments[fragments.length - 1].split("");
+				if (!letters[0].equals(letters[0].toLowerCase())) {
+					String[] allTypes = filterString(exprStr);
+					types.addAll(Arrays.asList(allTypes));
+				}
+			}
+		}
+
+		private String qualifiedName(Expression expression) {
+			if (expression.isNameExpr()) {
+				return expression.asNameExpr().getNameAsString();
+			} else if (expression.isFieldAccessExpr()) {
+				FieldAccessExpr access = expression.asFieldAccessExpr();
+				if (access.getTypeArguments().isPresent()) return null;
+				String scope = qualifiedName(access.getScope());
+				return scope != null ? scope + "." + access.getNameAsString() : null;
+			} else {
+				return null;
+			}
+		}
 	}
 
 	private String[] filterString(String typeString){
@@ -0,0 +1,40 @@
+package ch.usi.si.seart.src2abs;
+
+/**
+ * The families of IDs that identifiers and literals are replaced with.
+ * Each ID is formed by the family prefix and a sequential number, e.g. {@code VAR_1}.
+ * The IDs are built once and shared, so repeated requests for the same ID return the same instance.
+ */
+public enum Prefix {
+
+	TYPE, METHOD, VAR, ANNOTATION, CHAR, FLOAT, INT, STRING;
+
+	private static final int MAX_CACHED = 1 << 16;
+
+	private volatile String[] ids = new String[0];
+
+	/**
+	 * @param index the sequential number of the ID, starting from 1
+	 * @return the ID with the given number, e.g. {@code VAR_1}
+	 */
+	public String id(int index) {
+		String[] cached = ids;
+		if (index < cached.length) return cached[index];
+		if (index >= MAX_CACHED) return name() + '_' + index;
+		return grow(index);
+	}
+
+	private synchronized String grow(int index) {
+		String[] cached = ids;
+		if (index < cached.length) return cached[index];
+		int length = Math.max(cached.length, 64);
+		while (length <= index) length <<= 1;
+		String[] grown = new String[length];
+		System.arraycopy(cached, 0, grown, 0, cached.length);
+		for (int i = Math.max(cached.length, 1); i < length; i++) {
+			grown[i] = name() + '_' + i;
+		}
+		ids = grown;
+		return grown[index];
+	}
+}
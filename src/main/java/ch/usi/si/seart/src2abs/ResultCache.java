@@ -0,0 +1,343 @@
+package ch.usi.si.seart.src2abs;
+
+import com.github.javaparser.ParserConfiguration;
+import lombok.AccessLevel;
+import lombok.Builder;
+import lombok.EqualsAndHashCode;
+import lombok.RequiredArgsConstructor;
+import lombok.SneakyThrows;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caches abstraction results by the content they were computed from, so that
+ * duplicate inputs are abstracted only once. Results are keyed by a SHA-256
+ * digest of the source code stripped of its comments, the granularity and
+ * the idioms used to abstract it.
+ * <p>
+ * The most recently used results are kept in memory. If a directory is
+ * configured, results are also appended to a log on disk, which persists
+ * them between runs. The log is split in two generations of up to half the
+ * maximum size each: once the current generation is full, the previous one
+ * is discarded, and results read from the previous generation are copied to
+ * the current one. Frequently used results thus survive eviction, while the
+ * disk usage never exceeds the maximum size.
+ * <p>
+ * Instances are thread-safe, and are meant to be passed to the
+ * {@link Abstractor.AbstractorBuilder#cache(ResultCache) builder} of one or
+ * more abstractors. The mappings of cached results can not be modified.
+ */
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class ResultCache implements Closeable {
+
+	// part of every key, must be incremented whenever the abstraction of the same input changes
+	private static final int VERSION = 2;
+
+	private static final String CURRENT = "current.log";
+	private static final String PREVIOUS = "previous.log";
+
+	Map<Key, Abstractor.Result> memory;
+	Path directory;
+	long maxSize;
+
+	AtomicLong hits = new AtomicLong();
+	AtomicLong misses = new AtomicLong();
+
+	@NonFinal
+	Segment current;
+
+	@NonFinal
+	Segment previous;
+
+	/**
+	 * @param capacity the number of results kept in memory, default 10000
+	 * @param directory the directory of the log on disk, or {@code null} to cache results in memory only
+	 * @param maxSize the maximum size of the log on disk in bytes, default 256 MiB
+	 */
+	@Builder
+	@SneakyThrows(IOException.class)
+	private ResultCache(Integer capacity, Path directory, Long maxSize) {
+		int entries = capacity != null ? capacity : 10_000;
+		if (entries < 0) throw new IllegalArgumentException("Capacity must not be negative");
+		this.memory = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, Abstractor.Result> eldest) {
+				return size() > entries;
+			}
+		});
+		this.directory = directory;
+		this.maxSize = maxSize != null ? maxSize : 256L << 20;
+		if (directory != null) {
+			Files.createDirectories(directory);
+			this.previous = new Segment(directory.resolve(PREVIOUS));
+			this.current = new Segment(directory.resolve(CURRENT));
+		}
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	Abstractor.Result get(Key key) {
+		Abstractor.Result result = memory.get(key);
+		if (result == null && directory != null) {
+			result = read(key);
+			if (result != null) memory.put(key, result);
+		}
+		(result != null ? hits : misses).incrementAndGet();
+		return result;
+	}
+
+	void put(Key key, Abstractor.Result result) {
+		memory.put(key, result);
+		if (directory != null) write(key, result);
+	}
+
+	@SneakyThrows(IOException.class)
+	private synchronized Abstractor.Result read(Key key) {
+		byte[] payload = current.read(key);
+		if (payload == null) {
+			payload = previous.read(key);
+			if (payload == null) return null;
+			append(key, payload);
+		}
+		return deserialize(payload);
+	}
+
+	@SneakyThrows(IOException.class)
+	private synchronized void write(Key key, Abstractor.Result result) {
+		if (!current.contains(key)) append(key, serialize(result));
+	}
+
+	private void append(Key key, byte[] payload) throws IOException {
+		current.append(key, payload);
+		if (current.size >= maxSize / 2) {
+			previous.close();
+			current.close();
+			Files.move(directory.resolve(CURRENT), directory.resolve(PREVIOUS), StandardCopyOption.REPLACE_EXISTING);
+			previous = new Segment(directory.resolve(PREVIOUS));
+			current = new Segment(directory.resolve(CURRENT));
+		}
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		if (directory != null) {
+			current.close();
+			previous.close();
+		}
+	}
+
+	private static byte[] serialize(Abstractor.Result result) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(result.getAbstracted().length() * 2);
+		DataOutputStream out = new DataOutputStream(bytes);
+		writeString(out, result.getAbstracted());
+		// the mapping is derived from the identifiers and literals replaced by each ID
+		for (String[] family: result.getOriginals()) {
+			out.writeInt(family.length - 1);
+			for (int number = 1; number < family.length; number++) {
+				writeString(out, family[number]);
+			}
+		}
+		return bytes.toByteArray();
+	}
+
+	private static Abstractor.Result deserialize(byte[] payload) throws IOException {
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+		String abstracted = readString(in);
+		String[][] originals = new String[Prefix.values().length][];
+		for (int ordinal = 0; ordinal < originals.length; ordinal++) {
+			String[] family = new String[in.readInt() + 1];
+			for (int number = 1; number < family.length; number++) {
+				family[number] = readString(in);
+			}
+			originals[ordinal] = family;
+		}
+		Map<String, String> mapping = Tokenizer.mapping(originals);
+		return new Abstractor.Result(abstracted, Collections.unmodifiableMap(mapping), originals);
+	}
+
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/*
+	 * Digests everything except the source code that determines the result
+	 * of an abstraction. The lexing modes do not agree on the text of every
+	 * token: JavaParser reads through unicode escapes, which the Lexer keeps.
+	 * The language level decides what parses, and so what is abstracted
+	 * heuristically. The defaults are not included, which keeps the
+	 * fingerprints from before the other modes and options were added.
+	 */
+	static byte[] fingerprint(
+			Parser.Granularity granularity,
+			Tokenizer.Lexing lexing,
+			Parser.Parsing parsing,
+			ParserConfiguration configuration,
+			Set<String> idioms
+	) {
+		MessageDigest digest = sha256();
+		digest.update(ByteBuffer.allocate(Integer.BYTES).putInt(VERSION).array());
+		digest.update(granularity.name().getBytes(StandardCharsets.UTF_8));
+		if (parsing != Parser.Parsing.JAVAPARSER) {
+			digest.update((byte) 1);
+			digest.update(parsing.name().getBytes(StandardCharsets.UTF_8));
+		}
+		if (lexing != Tokenizer.Lexing.ANTLR) {
+			digest.update((byte) 2);
+			digest.update(lexing.name().getBytes(StandardCharsets.UTF_8));
+		}
+		ParserConfiguration defaults = new ParserConfiguration();
+		if (configuration.getLanguageLevel() != defaults.getLanguageLevel()
+				|| configuration.isPreprocessUnicodeEscapes() != defaults.isPreprocessUnicodeEscapes()) {
+			digest.update((byte) 3);
+			// the level is null when parsing without one
+			digest.update(String.valueOf(configuration.getLanguageLevel()).getBytes(StandardCharsets.UTF_8));
+			digest.update((byte) (configuration.isPreprocessUnicodeEscapes() ? 1 : 0));
+		}
+		for (String idiom: new TreeSet<>(idioms)) {
+			digest.update((byte) 0);
+			digest.update(idiom.getBytes(StandardCharsets.UTF_8));
+		}
+		return digest.digest();
+	}
+
+	static Key key(byte[] fingerprint, CharSequence cleaned) {
+		MessageDigest digest = sha256();
+		digest.update(fingerprint);
+		byte[] buffer = new byte[8192];
+		int length = cleaned.length();
+		for (int start = 0; start < length; start += buffer.length / 2) {
+			int end = Math.min(start + buffer.length / 2, length);
+			for (int i = start; i < end; i++) {
+				char c = cleaned.charAt(i);
+				buffer[2 * (i - start)] = (byte) (c >> 8);
+				buffer[2 * (i - start) + 1] = (byte) c;
+			}
+			digest.update(buffer, 0, 2 * (end - start));
+		}
+		return new Key(digest.digest());
+	}
+
+	@SneakyThrows(NoSuchAlgorithmException.class)
+	private static MessageDigest sha256() {
+		return MessageDigest.getInstance("SHA-256");
+	}
+
+	@EqualsAndHashCode
+	@RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+	@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+	static final class Key {
+
+		private static final int LENGTH = 32;
+
+		byte[] digest;
+	}
+
+	/*
+	 * An append-only log of results. Each record consists of the key, the
+	 * length of the payload and the payload itself. Only the offsets of the
+	 * payloads are kept in memory. A record left incomplete by an
+	 * interrupted write is truncated when the log is opened.
+	 */
+	@FieldDefaults(level = AccessLevel.PRIVATE)
+	private static final class Segment implements Closeable {
+
+		private static final int HEADER = Key.LENGTH + Integer.BYTES;
+
+		final FileChannel channel;
+		final Map<Key, Long> offsets = new HashMap<>();
+		long size = 0;
+
+		Segment(Path path) throws IOException {
+			channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+			long length = channel.size();
+			ByteBuffer header = ByteBuffer.allocate(HEADER);
+			while (size + HEADER <= length) {
+				header.clear();
+				readFully(header, size);
+				header.flip();
+				byte[] digest = new byte[Key.LENGTH];
+				header.get(digest);
+				int payload = header.getInt();
+				if (payload < 0 || size + HEADER + payload > length) break;
+				offsets.put(new Key(digest), size + HEADER);
+				size += HEADER + payload;
+			}
+			if (size < length) channel.truncate(size);
+		}
+
+		boolean contains(Key key) {
+			return offsets.containsKey(key);
+		}
+
+		byte[] read(Key key) throws IOException {
+			Long offset = offsets.get(key);
+			if (offset == null) return null;
+			ByteBuffer length = ByteBuffer.allocate(Integer.BYTES);
+			readFully(length, offset - Integer.BYTES);
+			ByteBuffer payload = ByteBuffer.allocate(length.flip().getInt());
+			readFully(payload, offset);
+			return payload.array();
+		}
+
+		void append(Key key, byte[] payload) throws IOException {
+			ByteBuffer record = ByteBuffer.allocate(HEADER + payload.length);
+			record.put(key.digest).putInt(payload.length).put(payload).flip();
+			long position = size;
+			while (record.hasRemaining()) {
+				position += channel.write(record, position);
+			}
+			offsets.put(key, size + HEADER);
+			size = position;
+		}
+
+		private void readFully(ByteBuffer buffer, long position) throws IOException {
+			while (buffer.hasRemaining()) {
+				int read = channel.read(buffer, position);
+				if (read < 0) throw new IOException("Unexpected end of the cache log");
+				position += read;
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			channel.close();
+		}
+	}
+}
@@ -0,0 +1,67 @@
+package ch.usi.si.seart.src2abs;
+
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Reads the sequences of token IDs written by a {@link SequenceWriter}.
+ */
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class SequenceReader implements Closeable {
+
+	InputStream in;
+
+	public SequenceReader(Path path) throws IOException {
+		this(Files.newInputStream(path));
+	}
+
+	public SequenceReader(InputStream in) throws IOException {
+		this.in = new BufferedInputStream(in);
+		byte[] magic = this.in.readNBytes(SequenceWriter.MAGIC.length);
+		if (!Arrays.equals(magic, SequenceWriter.MAGIC))
+			throw new IOException("Not a sequence file");
+		int version = this.in.read();
+		if (version != SequenceWriter.VERSION)
+			throw new IOException("Unsupported sequence file version: " + version);
+	}
+
+	/**
+	 * @return the next sequence of IDs, or {@code null} if the end of the file has been reached
+	 * @throws IOException if the file can not be read or is truncated
+	 */
+	public int[] read() throws IOException {
+		int first = in.read();
+		if (first < 0) return null;
+		int length = readVarInt(first);
+		int[] ids = new int[length];
+		for (int i = 0; i < length; i++) {
+			ids[i] = readVarInt(in.read());
+		}
+		return ids;
+	}
+
+	private int readVarInt(int current) throws IOException {
+		int value = 0;
+		for (int shift = 0; ; shift += 7) {
+			if (current < 0) throw new EOFException("Truncated sequence file");
+			if (shift > 28) throw new IOException("Malformed variable-length integer");
+			value |= (current & 0x7F) << shift;
+			if ((current & 0x80) == 0) return value;
+			current = in.read();
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		in.close();
+	}
+}
@@ -0,0 +1,68 @@
+package ch.usi.si.seart.src2abs;
+
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.IntBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Writes sequences of token IDs to a compact binary file. The file starts with
+ * the {@link #MAGIC} bytes followed by a format version byte. Each sequence is
+ * then stored as its length followed by its IDs, all encoded as unsigned
+ * variable-length integers (LEB128), so that most IDs occupy one or two bytes.
+ *
+ * @see SequenceReader
+ * @see TokenVocabulary
+ */
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class SequenceWriter implements Closeable {
+
+	static final byte[] MAGIC = {'S', '2', 'A', 'Q'};
+	static final int VERSION = 1;
+
+	OutputStream out;
+
+	public SequenceWriter(Path path) throws IOException {
+		this(Files.newOutputStream(path));
+	}
+
+	public SequenceWriter(OutputStream out) throws IOException {
+		this.out = new BufferedOutputStream(out);
+		this.out.write(MAGIC);
+		this.out.write(VERSION);
+	}
+
+	public void write(int[] ids) throws IOException {
+		write(IntBuffer.wrap(ids));
+	}
+
+	public void write(IntBuffer ids) throws IOException {
+		writeVarInt(ids.remaining());
+		for (int i = ids.position(); i < ids.limit(); i++) {
+			writeVarInt(ids.get(i));
+		}
+	}
+
+	private void writeVarInt(int value) throws IOException {
+		while ((value & ~0x7F) != 0) {
+			out.write((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.write(value);
+	}
+
+	public void flush() throws IOException {
+		out.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		out.close();
+	}
+}
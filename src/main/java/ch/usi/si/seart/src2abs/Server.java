@@ -0,0 +1,185 @@
+package ch.usi.si.seart.src2abs;
+
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Serves abstraction requests over TCP on the loopback interface, so that
+ * clients pay for JVM startup and class loading only once. Every message in
+ * either direction is a frame: a 4-byte big-endian length, followed by that
+ * many bytes of a UTF-8 encoded JSON object. A request carries the source
+ * code in its 'code' field and may override the granularity in its
+ * 'granularity' field. The response has the same fields as the records of
+ * the JSON Lines mode, plus the time spent on the request in 'micros'.
+ * Each connection is served by its own thread, which hands the requests
+ * over to a shared pool of workers. Requests on the same connection are
+ * answered in order.
+ */
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+class Server implements Closeable {
+
+	static final int MAX_FRAME = 1 << 26;
+
+	private static final String WARM_UP = "class WarmUp { void run() { System.out.println(\"warm-up\"); } }";
+
+	Map<Parser.Granularity, Abstractor> abstractors = new EnumMap<>(Parser.Granularity.class);
+	Parser.Granularity granularity;
+	ServerSocket socket;
+	ExecutorService workers;
+	ExecutorService connections = Executors.newCachedThreadPool(runnable -> {
+		Thread thread = new Thread(runnable, "src2abs-connection");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	Server(Abstractor abstractor, int port, int threads) throws IOException {
+		for (Parser.Granularity granularity: Parser.Granularity.values()) {
+			abstractors.put(granularity, abstractor.toBuilder().granularity(granularity).build());
+		}
+		this.granularity = abstractor.getGranularity();
+		this.workers = Executors.newFixedThreadPool(threads);
+		warmUp();
+		this.socket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+	}
+
+	int getPort() {
+		return socket.getLocalPort();
+	}
+
+	/*
+	 * Accepts connections until the server is closed.
+	 */
+	void serve(PrintWriter err) throws IOException {
+		while (!socket.isClosed()) {
+			Socket connection;
+			try {
+				connection = socket.accept();
+			} catch (SocketException ex) {
+				if (socket.isClosed()) return;
+				throw ex;
+			}
+			connections.execute(() -> handle(connection, err));
+		}
+	}
+
+	private void handle(Socket connection, PrintWriter err) {
+		try (
+				connection;
+				DataInputStream in = new DataInputStream(new BufferedInputStream(connection.getInputStream()));
+				DataOutputStream out = new DataOutputStream(new BufferedOutputStream(connection.getOutputStream()))
+		) {
+			connection.setTcpNoDelay(true);
+			while (true) {
+				int length;
+				try {
+					length = in.readInt();
+				} catch (EOFException ex) {
+					return;
+				}
+				if (length < 0 || length > MAX_FRAME) {
+					write(out, "{\"error\":\"Invalid frame length: " + length + "\"}");
+					return;
+				}
+				byte[] payload = new byte[length];
+				in.readFully(payload);
+				String request = new String(payload, StandardCharsets.UTF_8);
+				long start = System.nanoTime();
+				Future<String> response = workers.submit(() -> respond(request, start));
+				write(out, reply(response));
+			}
+		} catch (IOException ex) {
+			synchronized (err) {
+				err.printf("Connection closed: %s%n", ex);
+				err.flush();
+			}
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/*
+	 * Waits for the response, or turns whatever the worker failed with into an
+	 * error, so that the client gets an answer to every request it has sent.
+	 */
+	private static String reply(Future<String> response) throws InterruptedException {
+		try {
+			return response.get();
+		} catch (ExecutionException ex) {
+			StringBuilder builder = new StringBuilder("{");
+			Json.error("Request failed: " + ex.getCause(), builder);
+			return builder.append('}').toString();
+		}
+	}
+
+	private String respond(String request, long start) {
+		StringBuilder builder = new StringBuilder(request.length() * 2);
+		builder.append('{');
+		try {
+			String code = Json.field(request, "code");
+			String requested = Json.field(request, "granularity");
+			if (code == null) {
+				Json.error("Missing field 'code'", builder);
+			} else {
+				Parser.Granularity selected = requested != null
+						? Parser.Granularity.valueOf(requested.toUpperCase(Locale.ROOT))
+						: granularity;
+				Json.abstraction(abstractors.get(selected), code, builder);
+			}
+		} catch (IllegalArgumentException ex) {
+			Json.error("Malformed request: " + ex.getMessage(), builder);
+		}
+		long micros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start);
+		return builder.append(",\"micros\":").append(micros).append('}').toString();
+	}
+
+	private static void write(DataOutputStream out, String response) throws IOException {
+		byte[] payload = response.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(payload.length);
+		out.write(payload);
+		out.flush();
+	}
+
+	/*
+	 * Loads the Lexer, the parser and the classes they depend on before the
+	 * first request arrives, so that it does not pay for the initialization,
+	 * and fills the DFA of the lexer shared by all workers.
+	 */
+	private void warmUp() {
+		LexerCache.warmUp();
+		for (Abstractor abstractor: abstractors.values()) {
+			String code = abstractor.getGranularity() == Parser.Granularity.METHOD
+					? WARM_UP.substring(WARM_UP.indexOf('{') + 1, WARM_UP.lastIndexOf('}'))
+					: WARM_UP;
+			abstractor.abstractCode(code);
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		socket.close();
+		connections.shutdownNow();
+		workers.shutdownNow();
+	}
+}
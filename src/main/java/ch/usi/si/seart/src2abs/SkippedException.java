@@ -0,0 +1,26 @@
+package ch.usi.si.seart.src2abs;
+
+import lombok.Getter;
+
+/**
+ * Thrown when an input is not abstracted because it exceeds one of the limits
+ * configured on the {@link Abstractor}: its deadline, its maximum length or
+ * its maximum number of tokens. Unlike the other exceptions thrown by an
+ * abstraction, it says nothing about whether the input is well-formed.
+ */
+@Getter
+public class SkippedException extends RuntimeException {
+
+	private static final long serialVersionUID = 1L;
+
+	public enum Reason {
+		DEADLINE, LENGTH, TOKENS
+	}
+
+	private final Reason reason;
+
+	SkippedException(Reason reason, String message) {
+		super(message);
+		this.reason = reason;
+	}
+}
@@ -0,0 +1,256 @@
+package ch.usi.si.seart.src2abs;
+
+import com.github.javaparser.JavaParser;
+import com.github.javaparser.ParseResult;
+import com.github.javaparser.ParseStart;
+import com.github.javaparser.ParserConfiguration;
+import com.github.javaparser.Processor;
+import com.github.javaparser.Providers;
+import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.Node;
+import com.github.javaparser.ast.NodeList;
+import com.github.javaparser.ast.body.BodyDeclaration;
+import com.github.javaparser.ast.body.ClassOrInterfaceDeclaration;
+import com.github.javaparser.ast.body.TypeDeclaration;
+import com.github.javaparser.ast.comments.CommentsCollection;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.UtilityClass;
+import org.antlr.v4.runtime.Token;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Supplier;
+
+/*
+ * Parses a large compilation unit with the members of its top-level classes
+ * and interfaces parsed in parallel, which is where nearly all the time of
+ * abstracting such a unit goes. The members are delimited from the tokens of
+ * the unit: at the top level of a class body, a member ends with a semicolon,
+ * or with the closing brace of its body, unless it is the initializer of a
+ * field. Each member is parsed on its own, without validation, and added to
+ * the declaration parsed from the rest of the unit, in which the members are
+ * blanked out. The assembled unit is then post-processed and validated as a
+ * whole, like the parser would have, so that its tree is that of parsing the
+ * unit at once, and it is accepted exactly when the latter succeeds. Units
+ * that can not be split this way, or that fail to parse or validate, are left
+ * to the caller to parse at once, which reports the problems.
+ */
+@UtilityClass
+class Splitter {
+
+	// members are parsed in about this many tasks per thread, to even out their sizes
+	private static final int TASKS_PER_THREAD = 4;
+
+	/*
+	 * Returns the compilation unit, or null if it has to be parsed at once.
+	 * The tokens must be those of the Lexer, as the character offsets of the
+	 * tokens from JavaParser are not known.
+	 */
+	public CompilationUnit parse(
+			String sourceCode, List<Token> tokens, ParserConfiguration configuration, Guard guard, ForkJoinPool pool
+	) {
+		ParserConfiguration.LanguageLevel level = configuration.getLanguageLevel();
+		// the members are parsed without a language level, which does not support yield statements
+		if (level != null && level.isYieldSupported()) return null;
+		// the lexer does not see through unicode escapes, and the assembled tree has no tokens to preserve
+		if (configuration.isPreprocessUnicodeEscapes() || configuration.isLexicalPreservationEnabled()) return null;
+		List<Body> bodies = bodies(tokens);
+		if (bodies == null || bodies.isEmpty()) return null;
+
+		List<Member> members = new ArrayList<>();
+		char[] skeleton = sourceCode.toCharArray();
+		for (Body body: bodies) {
+			for (Member member: body.members) {
+				members.add(member);
+				for (int i = member.start; i < member.end; i++) {
+					if (skeleton[i] != '\n' && skeleton[i] != '\r') skeleton[i] = ' ';
+				}
+			}
+		}
+		ParserConfiguration unvalidated = new ParserConfiguration()
+				.setLanguageLevel(ParserConfiguration.LanguageLevel.RAW)
+				.setStoreTokens(false)
+				.setAttributeComments(false)
+				.setDetectOriginalLineSeparator(false);
+
+		int parallelism = Math.max(pool.getParallelism(), 1);
+		long target = Math.max(sourceCode.length() / ((long) parallelism * TASKS_PER_THREAD), 1);
+		List<ForkJoinTask<Boolean>> tasks = new ArrayList<>();
+		int first = 0;
+		while (first < members.size()) {
+			int last = first;
+			long length = members.get(first).end - members.get(first).start;
+			while (last + 1 < members.size() && length < target) {
+				last++;
+				length += members.get(last).end - members.get(last).start;
+			}
+			List<Member> group = members.subList(first, last + 1);
+			tasks.add(ForkJoinTask.adapt(() -> parse(sourceCode, group, unvalidated, guard)));
+			first = last + 1;
+		}
+		// the rest of the unit is parsed alongside the members, rather than before them
+		String rest = new String(skeleton);
+		ForkJoinTask<CompilationUnit> skeletal = ForkJoinTask.adapt(
+				() -> parse(ParseStart.COMPILATION_UNIT, rest, unvalidated, guard)
+		);
+		List<ForkJoinTask<?>> all = new ArrayList<>(tasks.size() + 1);
+		all.add(skeletal);
+		all.addAll(tasks);
+		pool.invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(all)));
+		guard.checkDeadline();
+		CompilationUnit unit = skeletal.join();
+		if (unit == null) return null;
+		for (ForkJoinTask<Boolean> task: tasks) {
+			if (!task.join()) return null;
+		}
+
+		NodeList<TypeDeclaration<?>> types = unit.getTypes();
+		for (Body body: bodies) {
+			if (body.index >= types.size()) return null;
+			TypeDeclaration<?> type = types.get(body.index);
+			if (!(type instanceof ClassOrInterfaceDeclaration) || !type.getNameAsString().equals(body.name)) return null;
+			if (type.getMembers().isNonEmpty()) return null;
+			for (Member member: body.members) type.addMember(member.declaration);
+		}
+		ParseResult<CompilationUnit> result = new ParseResult<>(unit, new ArrayList<>(), new CommentsCollection());
+		for (Supplier<Processor> supplier: configuration.getProcessors()) {
+			Processor processor = supplier.get();
+			// some processors keep what they find while reading the input, of which there is none left
+			processor.preProcess(Providers.provider(""));
+			processor.postProcess(result, configuration);
+		}
+		return result.isSuccessful() ? unit : null;
+	}
+
+	private boolean parse(String sourceCode, List<Member> members, ParserConfiguration configuration, Guard guard) {
+		for (Member member: members) {
+			String text = sourceCode.substring(member.start, member.end);
+			member.declaration = parse(ParseStart.CLASS_BODY, text, configuration, guard);
+			if (member.declaration == null) return false;
+		}
+		return true;
+	}
+
+	private <N extends Node> N parse(
+			ParseStart<N> start, String sourceCode, ParserConfiguration configuration, Guard guard
+	) {
+		try {
+			JavaParser parser = new JavaParser(configuration);
+			ParseResult<N> result = parser.parse(start, Providers.provider(guard.reader(new StringReader(sourceCode))));
+			return result.isSuccessful() ? result.getResult().orElse(null) : null;
+		} catch (RuntimeException ex) {
+			// whatever went wrong happens again when parsing at once, and is reported from there
+			return null;
+		}
+	}
+
+	/*
+	 * Delimits the members of the top-level class and interface bodies, or
+	 * returns null if the braces or parentheses of the unit are unbalanced.
+	 * Other top-level declarations are not split, but are counted, so that
+	 * the index of each body among the types of the unit is known.
+	 */
+	private List<Body> bodies(List<Token> tokens) {
+		List<Body> bodies = new ArrayList<>();
+		int braces = 0;
+		int parentheses = 0;
+		int types = 0;
+		// the keyword and name of the top-level declaration being read
+		int keyword = -1;
+		String name = null;
+		Body body = null;
+		int start = -1;
+		boolean initialized = false;
+		for (int i = 0; i < tokens.size(); i++) {
+			Token token = tokens.get(i);
+			int type = token.getType();
+			int previous = i > 0 ? tokens.get(i - 1).getType() : -1;
+			if (type == Lexer.LPAREN) {
+				parentheses++;
+			} else if (type == Lexer.RPAREN) {
+				if (--parentheses < 0) return null;
+			}
+			if (braces == 0) {
+				if (type == Lexer.LBRACE) {
+					boolean splittable = parentheses == 0 && name != null
+							&& (keyword == Lexer.CLASS || keyword == Lexer.INTERFACE);
+					body = splittable ? new Body(types, name, new ArrayList<>()) : null;
+					types++;
+					braces++;
+					start = -1;
+				} else if (parentheses == 0 && (type == Lexer.CLASS && previous != Lexer.DOT || type == Lexer.ENUM
+						|| type == Lexer.INTERFACE && previous != Lexer.AT)) {
+					keyword = type;
+					name = i + 1 < tokens.size() && tokens.get(i + 1).getType() == Lexer.Identifier
+							? tokens.get(i + 1).getText()
+							: null;
+				} else if (type == Lexer.INTERFACE) {
+					keyword = Lexer.AT;
+				}
+				continue;
+			}
+			boolean member = body != null && braces == 1 && parentheses == 0;
+			if (type == Lexer.LBRACE) {
+				if (member && start < 0) {
+					start = i;
+					initialized = false;
+				}
+				braces++;
+			} else if (type == Lexer.RBRACE) {
+				braces--;
+				if (braces == 0) {
+					if (body != null) {
+						if (start >= 0) return null;
+						bodies.add(body);
+					}
+					body = null;
+					keyword = -1;
+					name = null;
+				} else if (braces == 1 && body != null && parentheses == 0 && start >= 0 && !initialized) {
+					body.members.add(new Member(tokens.get(start).getStartIndex(), token.getStopIndex() + 1));
+					start = -1;
+				}
+			} else if (member) {
+				if (type == Lexer.SEMI) {
+					// a semicolon on its own declares nothing, and is left in place
+					if (start >= 0) body.members.add(new Member(tokens.get(start).getStartIndex(), token.getStopIndex() + 1));
+					start = -1;
+				} else if (start < 0) {
+					start = i;
+					initialized = type == Lexer.ASSIGN;
+				} else if (type == Lexer.ASSIGN) {
+					initialized = true;
+				}
+			}
+		}
+		return braces == 0 && parentheses == 0 ? bodies : null;
+	}
+
+	@AllArgsConstructor(access = AccessLevel.PRIVATE)
+	@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+	private static final class Body {
+		int index;
+		String name;
+		List<Member> members;
+	}
+
+	@FieldDefaults(level = AccessLevel.PRIVATE)
+	private static final class Member {
+
+		final int start;
+		final int end;
+
+		// parsed by one of the tasks, and read once all of them are done
+		BodyDeclaration<?> declaration;
+
+		private Member(int start, int end) {
+			this.start = start;
+			this.end = end;
+		}
+	}
+}
@@ -0,0 +1,84 @@
+package ch.usi.si.seart.src2abs;
+
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A dictionary of the identifiers and literals of a corpus, which numbers
+ * each distinct string with a dense symbol, starting from 0, and keeps a
+ * single canonical instance of it. When configured on an {@link Abstractor},
+ * the mappings of all its results hold the canonical instances rather than
+ * a copy of the text of each token, so that the names recurring throughout
+ * a corpus, such as {@code size} or {@code i}, are only kept in memory once
+ * by the results of a batch.
+ * <p>
+ * The dictionary only grows, and holds every distinct string it has been
+ * given, so it is meant to be scoped to a batch rather than to a process.
+ * Instances are safe to share between threads: strings that are already
+ * in the dictionary are looked up without locking.
+ */
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class SymbolTable {
+
+	ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+
+	// canonical instances by symbol, only replaced and appended to while holding the lock
+	@NonFinal
+	volatile String[] symbols = new String[64];
+
+	/**
+	 * @param string an identifier or literal
+	 * @return the symbol of the string, which is added to the dictionary if missing
+	 */
+	public int id(String string) {
+		Integer id = ids.get(string);
+		return id != null ? id : add(string);
+	}
+
+	/**
+	 * @param string an identifier or literal
+	 * @return the canonical instance of the string, which is added to the dictionary if missing
+	 */
+	public String canonical(String string) {
+		return symbol(id(string));
+	}
+
+	/**
+	 * @param id a symbol of the dictionary
+	 * @return the canonical instance of the string with the symbol
+	 * @throws IndexOutOfBoundsException if the symbol is not in the dictionary
+	 */
+	public String symbol(int id) {
+		String[] symbols = this.symbols;
+		String symbol = id >= 0 && id < symbols.length ? symbols[id] : null;
+		if (symbol == null) throw new IndexOutOfBoundsException("Unknown symbol: " + id);
+		return symbol;
+	}
+
+	/**
+	 * @return the number of strings in the dictionary
+	 */
+	public int size() {
+		return ids.size();
+	}
+
+	/*
+	 * The canonical instance is stored before the symbol is published in the
+	 * map, so that whoever finds the symbol also finds its instance.
+	 */
+	private synchronized int add(String string) {
+		Integer id = ids.get(string);
+		if (id != null) return id;
+		int size = ids.size();
+		String[] symbols = this.symbols;
+		if (size == symbols.length) symbols = Arrays.copyOf(symbols, size * 2);
+		symbols[size] = string;
+		this.symbols = symbols;
+		ids.put(string, size);
+		return size;
+	}
+}
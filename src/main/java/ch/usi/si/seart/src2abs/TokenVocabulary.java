@@ -0,0 +1,199 @@
+package ch.usi.si.seart.src2abs;
+
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+
+import java.io.IOException;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Maps the tokens of abstracted code to integer IDs, so that abstractions can
+ * be fed to models without being split and looked up again.
+ * <p>
+ * The vocabulary is laid out deterministically: the padding and unknown
+ * tokens come first, followed by the keywords and separators of the
+ * {@link Lexer} in the order of their token types, the IDs of each
+ * {@link Prefix} family from {@code 1} up to the maximum index, and finally
+ * the idioms in lexicographic order. Building a vocabulary from the same
+ * idioms and maximum index therefore always yields the same token IDs.
+ * Instances are immutable and can be shared between threads.
+ */
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class TokenVocabulary {
+
+	public static final String PADDING = "<pad>";
+	public static final String UNKNOWN = "<unk>";
+
+	public static final int PADDING_ID = 0;
+	public static final int UNKNOWN_ID = 1;
+
+	String[] tokens;
+	Map<String, Integer> ids;
+
+	private TokenVocabulary(List<String> tokens) {
+		this.tokens = tokens.toArray(String[]::new);
+		Map<String, Integer> ids = new HashMap<>(this.tokens.length * 2);
+		for (int i = 0; i < this.tokens.length; i++) {
+			ids.putIfAbsent(this.tokens[i], i);
+		}
+		this.ids = ids;
+	}
+
+	/**
+	 * @param idioms the idioms used during abstraction
+	 * @param maxIndex the highest number of an ID in each family that has its own token,
+	 *                 IDs with higher numbers are encoded as {@link #UNKNOWN_ID}
+	 * @return a vocabulary covering the Lexer keywords and separators, ID families and idioms
+	 */
+	public static TokenVocabulary of(Collection<String> idioms, int maxIndex) {
+		if (maxIndex < 0) throw new IllegalArgumentException("Maximum index must not be negative");
+		List<String> tokens = new ArrayList<>();
+		tokens.add(PADDING);
+		tokens.add(UNKNOWN);
+		org.antlr.v4.runtime.Vocabulary vocabulary = Lexer.VOCABULARY;
+		for (int type = 1; type <= vocabulary.getMaxTokenType(); type++) {
+			String name = vocabulary.getLiteralName(type);
+			if (name != null) tokens.add(name.substring(1, name.length() - 1));
+		}
+		tokens.add("true");
+		tokens.add("false");
+		for (Prefix prefix: Prefix.values()) {
+			for (int index = 1; index <= maxIndex; index++) {
+				tokens.add(prefix.id(index));
+			}
+		}
+		tokens.addAll(new TreeSet<>(idioms));
+		return new TokenVocabulary(tokens);
+	}
+
+	/**
+	 * @param path file containing one token per line, as written by {@link #write(Path)}
+	 * @return the vocabulary stored in the file
+	 * @throws IOException if the file can not be read
+	 */
+	public static TokenVocabulary read(Path path) throws IOException {
+		return new TokenVocabulary(Files.readAllLines(path, StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Writes the tokens of this vocabulary to a file, one per line in the order of their IDs.
+	 *
+	 * @param path the destination file
+	 * @throws IOException if the file can not be written
+	 */
+	public void write(Path path) throws IOException {
+		Files.write(path, Arrays.asList(tokens), StandardCharsets.UTF_8);
+	}
+
+	public int size() {
+		return tokens.length;
+	}
+
+	public int id(String token) {
+		return ids.getOrDefault(token, UNKNOWN_ID);
+	}
+
+	public String token(int id) {
+		return id >= 0 && id < tokens.length ? tokens[id] : UNKNOWN;
+	}
+
+	public int[] encode(String abstracted) {
+		Encoder encoder = encoder();
+		encoder.append(abstracted);
+		return encoder.toArray();
+	}
+
+	public String decode(int[] ids) {
+		StringBuilder builder = new StringBuilder();
+		for (int id: ids) {
+			if (id == PADDING_ID) continue;
+			if (builder.length() > 0) builder.append(' ');
+			builder.append(token(id));
+		}
+		return builder.toString();
+	}
+
+	public Encoder encoder() {
+		return new Encoder();
+	}
+
+	/**
+	 * Converts abstracted code into token IDs as it is being written. Can be
+	 * passed to {@link Abstractor#abstractCode(CharSequence, Appendable)} in
+	 * place of a textual destination, which avoids building the abstraction
+	 * as a string only to split it again. Instances are not thread-safe, but
+	 * can be {@link #reset() reset} and reused for subsequent abstractions.
+	 */
+	@FieldDefaults(level = AccessLevel.PRIVATE)
+	public final class Encoder implements Appendable {
+
+		int[] buffer = new int[256];
+		int size = 0;
+
+		private Encoder() {
+		}
+
+		@Override
+		public Encoder append(CharSequence csq) {
+			String token = csq.toString();
+			Integer id = ids.get(token);
+			if (id != null) {
+				add(id);
+			} else if (token.indexOf(' ') >= 0) {
+				// qualified names, e.g. 'VAR_1 . METHOD_2', are written as a single chunk
+				int start = 0;
+				for (int end = token.indexOf(' '); end >= 0; start = end + 1, end = token.indexOf(' ', start)) {
+					if (end > start) add(id(token.substring(start, end)));
+				}
+				if (start < token.length()) add(id(token.substring(start)));
+			} else if (!token.isEmpty()) {
+				add(UNKNOWN_ID);
+			}
+			return this;
+		}
+
+		@Override
+		public Encoder append(CharSequence csq, int start, int end) {
+			return append(csq.subSequence(start, end));
+		}
+
+		@Override
+		public Encoder append(char c) {
+			return c == ' ' ? this : append(String.valueOf(c));
+		}
+
+		private void add(int id) {
+			if (size == buffer.length) buffer = Arrays.copyOf(buffer, size * 2);
+			buffer[size++] = id;
+		}
+
+		public int size() {
+			return size;
+		}
+
+		public int[] toArray() {
+			return Arrays.copyOf(buffer, size);
+		}
+
+		/**
+		 * @return a read-only view of the encoded IDs, valid until the encoder is used again
+		 */
+		public IntBuffer asBuffer() {
+			return IntBuffer.wrap(buffer, 0, size).asReadOnlyBuffer();
+		}
+
+		public void reset() {
+			size = 0;
+		}
+	}
+}
@@ -0,0 +1,49 @@
+package ch.usi.si.seart.src2abs;
+
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.TokenSource;
+
+/*
+ * Bounded view over a stream of tokens, which are pulled from their source on
+ * demand. Tokens are addressed by their absolute index in the stream, but only
+ * the most recently read ones are retained in a ring buffer. The tokenizer
+ * never looks more than a few tokens ahead of or behind the current one, so
+ * memory usage remains constant regardless of the size of the input.
+ */
+@RequiredArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE)
+class TokenWindow {
+
+	private static final int CAPACITY = 8;
+	private static final int MASK = CAPACITY - 1;
+
+	final TokenSource source;
+	final Token[] buffer = new Token[CAPACITY];
+
+	int fetched = 0;
+	boolean exhausted = false;
+
+	public boolean has(int index) {
+		while (index >= fetched && !exhausted) {
+			Token token = source.nextToken();
+			if (token.getType() == Token.EOF) {
+				exhausted = true;
+			} else {
+				buffer[fetched & MASK] = token;
+				fetched++;
+			}
+		}
+		return index < fetched;
+	}
+
+	public Token get(int index) {
+		if (!has(index) || index < 0)
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + fetched);
+		if (index <= fetched - CAPACITY)
+			throw new IllegalStateException("Token " + index + " is no longer retained");
+		return buffer[index & MASK];
+	}
+}
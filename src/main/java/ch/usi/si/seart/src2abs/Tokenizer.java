@@ -1,62 +1,96 @@
 package ch.usi.si.seart.src2abs;
 
+import com.github.javaparser.ast.Node;
 import lombok.AccessLevel;
-import lombok.RequiredArgsConstructor;
+import lombok.AllArgsConstructor;
 import lombok.SneakyThrows;
 import lombok.experimental.FieldDefaults;
-import org.antlr.v4.runtime.ANTLRInputStream;
+import org.antlr.v4.runtime.ListTokenSource;
 import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.TokenSource;
 
-import java.io.ByteArrayInputStream;
-import java.io.InputStream;
-import java.nio.charset.StandardCharsets;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.function.Function;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
-@RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
 @FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
 class Tokenizer {
 
+	public enum Lexing {
+		ANTLR, JAVAPARSER
+	}
+
 	private static final String SPACED_DOT = " . ";
 
-	Map<String, String> stringLiterals = new LinkedHashMap<>();
-	Map<String, String> charLiterals = new LinkedHashMap<>();
-	Map<String, String> intLiterals = new LinkedHashMap<>();
-	Map<String, String> floatLiterals = new LinkedHashMap<>();
-	Map<String, String> typeMap = new LinkedHashMap<>();
-	Map<String, String> methodMap = new LinkedHashMap<>();
-	Map<String, String> annotationMap = new LinkedHashMap<>();
-	Map<String, String> varMap = new LinkedHashMap<>();
+	private static final Prefix[] PREFIXES = Prefix.values();
+
+	// the identifiers and literals replaced so far, indexed by the ordinal of their prefix
+	IdTable[] tables;
 
 	Set<String> types;
 	Set<String> methods;
 	Set<String> annotations;
 	Set<String> idioms;
 
+	Tokenizer(Set<String> types, Set<String> methods, Set<String> annotations, Set<String> idioms) {
+		this(newTables(), types, methods, annotations, idioms);
+	}
+
 	public Tokenizer(Parser parser, Set<String> idioms) {
 		this(parser.getTypes(), parser.getMethods(), parser.getAnnotations(), idioms);
 	}
 
-	public String tokenize(String sourceCode) {
-		List<Token> tokens = readTokens(sourceCode);
+	public Tokenizer(Classifier classifier, Set<String> idioms) {
+		this(classifier.getTypes(), classifier.getMethods(), classifier.getAnnotations(), idioms);
+	}
+
+	/*
+	 * Returns a tokenizer that classifies the identifiers by the given names,
+	 * but numbers them in the same tables as this one, so that whatever both
+	 * replace gets the same ID.
+	 */
+	Tokenizer reclassify(Set<String> types, Set<String> methods, Set<String> annotations) {
+		return new Tokenizer(tables, types, methods, annotations, idioms);
+	}
+
+	public String tokenize(CharSequence sourceCode) {
+		return tokenize(lex(sourceCode));
+	}
+
+	public String tokenize(List<Token> tokens) {
+		return tokenize(new ListTokenSource(tokens));
+	}
 
+	public String tokenize(TokenSource source) {
 		StringBuilder sb = new StringBuilder();
+		tokenize(source, sb);
+		return sb.toString();
+	}
 
-		for (int i = 0; i < tokens.size(); i++) {
+	/*
+	 * Writes the tokens separated by single spaces as soon as they are produced.
+	 * The output matches joining all the tokens with spaces and trimming the
+	 * result: empty tokens still account for a separator, unless they come first
+	 * or last.
+	 */
+	@SneakyThrows(IOException.class)
+	public void tokenize(TokenSource source, Appendable out) {
+		TokenWindow tokens = new TokenWindow(source);
+		boolean written = false;
+		int skipped = 0;
+
+		for (int i = 0; tokens.has(i); i++) {
 			String token = "";
 			Token t = tokens.get(i);
 
 			//Handling annotations
 			if (t.getType() == Lexer.AT){
 				int j = i + 1;
-				Token nextToken = tokens.get(j);
+				Token nextToken = tokens.has(j) ? tokens.get(j) : t;
 
 				if (nextToken.getType() == Lexer.Identifier && annotations.contains(nextToken.getText())) {
 					//This is an annotation
@@ -69,14 +103,13 @@ class Tokenizer {
 				int j = i + 1;
 
 				boolean expectDOT = true;
-				while (j < tokens.size()) {
+				while (tokens.has(j)) {
 					Token nextToken = tokens.get(j);
 					if (expectDOT) {
 						if (nextToken.getType() == Lexer.DOT) {
 							tokenName += nextToken.getText();
 							expectDOT = false;
 						} else {
-							i = j - 1;
 							break;
 						}
 					} else {
@@ -85,13 +118,13 @@ class Tokenizer {
 								tokens.get(j-1).getType() == Lexer.DOT) {
 							tokenName += nextToken.getText();
 						} else {
-							i = j-1;
 							break;
 						}
 					}
 					j++;
 				}
-
+				//The name ends before the token that broke the chain, or with the last token
+				i = j - 1;
 
 				token = analyzeIdentifier(tokenName, tokens, i);
 			} else if (t.getType() == Lexer.CharacterLiteral) {
@@ -106,50 +139,98 @@ class Tokenizer {
 				token = t.getText();
 			}
 
-			sb.append(token).append(" ");
+			if (token.isEmpty()) {
+				if (written) skipped++;
+				continue;
+			}
+			if (written) {
+				for (int k = 0; k <= skipped; k++) out.append(' ');
+			}
+			out.append(token);
+			written = true;
+			skipped = 0;
 		}
+	}
+
+	public static List<Token> readTokens(CharSequence sourceCode) {
+		return readTokens(lex(sourceCode));
+	}
 
-		return sb.toString().trim();
+	public static List<Token> readTokens(Node node) {
+		return readTokens(new JavaTokenSource(node));
 	}
 
-	@SneakyThrows
-	public static List<Token> readTokens(String sourceCode) {
-		InputStream inputStream = new ByteArrayInputStream(sourceCode.getBytes(StandardCharsets.UTF_8));
-		Lexer jLexer = new Lexer(new ANTLRInputStream(inputStream));
+	public static TokenSource lex(CharSequence sourceCode) {
+		Lexer jLexer = new Lexer(new CharSequenceStream(sourceCode));
 		jLexer.removeErrorListeners();
+		return jLexer;
+	}
 
+	public static List<Token> readTokens(TokenSource source) {
 		List<Token> tokens = new ArrayList<>();
-		for (Token t = jLexer.nextToken(); t.getType() != Token.EOF; t = jLexer.nextToken()) {
+		for (Token t = source.nextToken(); t.getType() != Token.EOF; t = source.nextToken()) {
 			tokens.add(t);
 		}
 
 		return tokens;
 	}
 
+	public int count(Prefix prefix) {
+		return tables[prefix.ordinal()].size();
+	}
+
 	public Map<String, String> export() {
-		return Stream.of(
-				typeMap.entrySet().stream(),
-				methodMap.entrySet().stream(),
-				varMap.entrySet().stream(),
-				annotationMap.entrySet().stream(),
-				charLiterals.entrySet().stream(),
-				floatLiterals.entrySet().stream(),
-				intLiterals.entrySet().stream(),
-				stringLiterals.entrySet().stream()
-		)
-		.flatMap(Function.identity())
-		.collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue, (v1, v2) -> v2, LinkedHashMap::new));
+		return mapping(originals());
 	}
 
-	private String analyzeIdentifier(String token, List<Token> tokens, int i) {
-		if (idioms.contains(token)) return token;
+	/*
+	 * The identifier or literal replaced by each ID, indexed by the ordinal of
+	 * its prefix and its number. Unlike the mapping, which holds a single ID
+	 * per identifier, this keeps every ID of an identifier that has been
+	 * replaced in more than one family, e.g. as both a type and a variable.
+	 */
+	public String[][] originals() {
+		return originals(null);
+	}
 
-		String[] tokenParts = token.split("\\.");
+	/*
+	 * As above, but with the canonical instances of the dictionary, if any,
+	 * in place of the text of the tokens.
+	 */
+	public String[][] originals(SymbolTable symbols) {
+		String[][] originals = new String[PREFIXES.length][];
+		for (Prefix prefix: PREFIXES) {
+			IdTable table = tables[prefix.ordinal()];
+			String[] family = new String[table.size() + 1];
+			for (int number = 1; number <= table.size(); number++) {
+				String key = table.key(number);
+				family[number] = symbols != null ? symbols.canonical(key) : key;
+			}
+			originals[prefix.ordinal()] = family;
+		}
+		return originals;
+	}
+
+	public static Map<String, String> mapping(String[][] originals) {
+		Map<String, String> mapping = new LinkedHashMap<>();
+		for (Prefix prefix: PREFIXES) {
+			String[] family = originals[prefix.ordinal()];
+			for (int number = 1; number < family.length; number++) {
+				if (family[number] != null) mapping.put(family[number], prefix.id(number));
+			}
+		}
+		return mapping;
+	}
+
+	private String analyzeIdentifier(String token, TokenWindow tokens, int i) {
+		if (idioms.contains(token)) return token;
 
-		if (tokenParts.length > 1) {
-			String lastPart = tokenParts[tokenParts.length-1];
-			String firstPart = token.substring(0, token.length()-lastPart.length()-1);
+		int dot = token.lastIndexOf('.');
+		boolean qualified = dot > 0 && dot < token.length() - 1;
+		String firstPart = qualified ? token.substring(0, dot) : null;
+		String lastPart = qualified ? token.substring(dot + 1) : null;
 
+		if (qualified) {
 			if (idioms.contains(lastPart)) {
 				if (idioms.contains(firstPart)) {
 					// idiom . idiom
@@ -179,7 +260,7 @@ class Tokenizer {
 
 		//Check if it could be a method (the next token is a parenthesis)
 		boolean couldBeMethod = false;
-		if (i + 1 < tokens.size()) {
+		if (tokens.has(i + 1)) {
 			Token t = tokens.get(i + 1);
 			if (t.getType() == Lexer.LPAREN) {
 				couldBeMethod = true;
@@ -200,10 +281,7 @@ class Tokenizer {
 			return getMethodId(token);
 		}
 
-		if (tokenParts.length > 1) {
-			String lastPart = tokenParts[tokenParts.length - 1];
-			String firstPart = token.substring(0, token.length()-lastPart.length() - 1);
-
+		if (qualified) {
 			if (methods.contains(lastPart) && couldBeMethod) {
 				if (idioms.contains(firstPart)) {
 					// idiom . method_#
@@ -218,11 +296,8 @@ class Tokenizer {
 			}
 		}
 
-		if (tokenParts.length > 1) {
-			String lastPart = tokenParts[tokenParts.length-1];
-			String firstPart = token.substring(0, token.length()-lastPart.length() - 1);
-
-			if (varMap.containsKey(lastPart)){
+		if (qualified) {
+			if (tables[Prefix.VAR.ordinal()].contains(lastPart)){
 				if (idioms.contains(firstPart)) {
 					// idiom . var_#
 					return firstPart + SPACED_DOT + getVarId(lastPart);
@@ -236,10 +311,7 @@ class Tokenizer {
 			}
 		}
 
-		if (tokenParts.length > 1) {
-			String lastPart = tokenParts[tokenParts.length - 1];
-			String firstPart = token.substring(0, token.length()-lastPart.length() - 1);
-
+		if (qualified) {
 			if (types.contains(firstPart)){
 				if (idioms.contains(lastPart) || lastPart.equals("this") || lastPart.equals("class")) {
 					// type_# . idiom
@@ -248,7 +320,7 @@ class Tokenizer {
 					// type_# . var_#
 					return getTypeId(firstPart) + SPACED_DOT + getVarId(lastPart);
 				}
-			} else if (varMap.containsKey(firstPart)){
+			} else if (tables[Prefix.VAR.ordinal()].contains(firstPart)){
 				if (idioms.contains(lastPart)) {
 					// var_# . idiom
 					return getVarId(firstPart) + SPACED_DOT + lastPart;
@@ -262,10 +334,7 @@ class Tokenizer {
 		}
 
 		// var_# . var_#
-		if (tokenParts.length > 1) {
-			String lastPart = tokenParts[tokenParts.length - 1];
-			String firstPart = token.substring(0, token.length()-lastPart.length() - 1);
-
+		if (qualified) {
 			if (lastPart.equals("this") || lastPart.equals("class")){
 				if (idioms.contains(firstPart)){
 					return firstPart + SPACED_DOT + lastPart;
@@ -291,86 +360,58 @@ class Tokenizer {
 
 	//------------------ IDs ----------------------
 
-	Function<String, String> getTypeId = _idGetter(typeMap, "TYPE_");
+	private static IdTable[] newTables() {
+		IdTable[] tables = new IdTable[PREFIXES.length];
+		for (int i = 0; i < tables.length; i++) {
+			tables[i] = new IdTable();
+		}
+		return tables;
+	}
+
+	private String getId(Prefix prefix, String token) {
+		return prefix.id(tables[prefix.ordinal()].add(token));
+	}
+
 	private String getTypeId(String token) {
-		return getTypeId.apply(token);
+		return getId(Prefix.TYPE, token);
 	}
 
-	Function<String, String> getVarId = _idGetter(varMap, "VAR_");
 	private String getVarId(String token) {
-		return getVarId.apply(token);
+		return getId(Prefix.VAR, token);
 	}
 
-	Function<String, String> getMethodId = _idGetter(methodMap, "METHOD_");
 	private String getMethodId(String token) {
-		return getMethodId.apply(token);
-	}
-	
-	private Function<String, String> _idGetter(
-			Map<String, String> literals, String prefix
-	) {
-		AtomicInteger counter = new AtomicInteger();
-		return (text) -> {
-			if (literals.containsKey(text)) {
-				return literals.get(text);
-			} else {
-				String id = prefix + counter.incrementAndGet();
-				literals.put(text, id);
-				return id;
-			}
-		};
+		return getId(Prefix.METHOD, token);
 	}
 
-	AtomicInteger annotationsCounter = new AtomicInteger();
 	private String getAnnotationID(String token) {
 		if (idioms.contains("@" + token)) {
 			return "@" + token;
-		} else if (annotationMap.containsKey(token)) {
-			return annotationMap.get(token);
 		} else {
-			String id = "ANNOTATION_" + annotationsCounter.incrementAndGet();
-			annotationMap.put(token, id);
-			return id;
+			return getId(Prefix.ANNOTATION, token);
 		}
 	}
 
 	//------------------ LITERALS ----------------------
 
-	Function<Token, String> getCharId = _literalIdGetter(charLiterals, "CHAR_");
 	private String getCharId(Token token) {
-		return getCharId.apply(token);
+		return getLiteralId(Prefix.CHAR, token);
 	}
 
-	Function<Token, String> getFloatId = _literalIdGetter(floatLiterals, "FLOAT_");
 	private String getFloatId(Token token) {
-		return getFloatId.apply(token);
+		return getLiteralId(Prefix.FLOAT, token);
 	}
 
-	Function<Token, String> getIntId = _literalIdGetter(intLiterals, "INT_");
 	private String getIntId(Token token) {
-		return getIntId.apply(token);
+		return getLiteralId(Prefix.INT, token);
 	}
 
-	Function<Token, String> getStringId = _literalIdGetter(stringLiterals, "STRING_");
 	private String getStringId(Token token) {
-		return getStringId.apply(token);
+		return getLiteralId(Prefix.STRING, token);
 	}
 
-	private Function<Token, String> _literalIdGetter(
-			Map<String, String> literals, String prefix
-	) {
-		AtomicInteger counter = new AtomicInteger();
-		return (token) -> {
-			String text = token.getText();
-			if (idioms.contains(text)) {
-				return text;
-			} else if (literals.containsKey(text)) {
-				return literals.get(text);
-			} else {
-				String id = prefix + counter.incrementAndGet();
-				literals.put(text, id);
-				return id;
-			}
-		};
+	private String getLiteralId(Prefix prefix, Token token) {
+		String text = token.getText();
+		return idioms.contains(text) ? text : getId(prefix, text);
 	}
 }
@@ -1,9 +1,29 @@
 package ch.usi.si.seart.src2abs;
 
+import com.github.javaparser.ParseProblemException;
+import com.github.javaparser.ParserConfiguration;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 class AbstractorTest {
 
@@ -67,4 +87,659 @@ class AbstractorTest {
         Assertions.assertEquals(expected, result.getAbstracted());
         Assertions.assertEquals(7, result.getMapping().size());
     }
-}
\ No newline at end of file
+
+    @Test
+    void concurrentAbstractionTest() throws Exception {
+        String original =
+                "public static void main(String[] args) {\n" +
+                "    System.out.println(\"Hello World!\");\n" +
+                "}\n";
+        String expected = "public static void METHOD_1 ( String [ ] VAR_1 ) { VAR_2 . VAR_3 . METHOD_2 ( STRING_1 ) ; }";
+        Abstractor abstractor = Abstractor.builder()
+                .granularity(Parser.Granularity.METHOD)
+                .idioms(Set.of("String"))
+                .build();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Abstractor.Result>> futures = new ArrayList<>();
+            for (int i = 0; i < 64; i++) {
+                futures.add(executor.submit(() -> abstractor.abstractCode(original)));
+            }
+            for (Future<Abstractor.Result> future: futures) {
+                Assertions.assertEquals(expected, future.get().getAbstracted());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void lexingTest() {
+        String original =
+                "class Lambdas {\n" +
+                "    List<List<String>> values = load(x -> x >> 2, Lambdas::convert);\n" +
+                "    int shift = 1 << 3 >>> 1;\n" +
+                "}\n";
+        Abstractor.Result expected = Abstractor.builder()
+                .lexing(Tokenizer.Lexing.ANTLR)
+                .build()
+                .abstractCode(original);
+        Abstractor.Result actual = Abstractor.builder()
+                .lexing(Tokenizer.Lexing.JAVAPARSER)
+                .build()
+                .abstractCode(original);
+        Assertions.assertEquals(expected.getAbstracted(), actual.getAbstracted());
+        Assertions.assertEquals(expected.getMapping(), actual.getMapping());
+    }
+
+    @Test
+    void commentRemovalTest() {
+        String original =
+                "void open() {\n" +
+                "    browse(\"https://example.org\", '/'); // opens \"the\" page\n" +
+                "    /* browse(\"/*\"); */ close(\"*/\");\n" +
+                "}\n";
+        String expected = "void METHOD_1 ( ) { METHOD_2 ( STRING_1 , CHAR_1 ) ; METHOD_3 ( STRING_2 ) ; }";
+        Abstractor.Result result = Abstractor.abstractCode(Parser.Granularity.METHOD, original, Set.of());
+        Assertions.assertEquals(expected, result.getAbstracted());
+        Assertions.assertEquals("STRING_1", result.getMapping().get("\"https://example.org\""));
+        Assertions.assertEquals("STRING_2", result.getMapping().get("\"*/\""));
+    }
+
+    @Test
+    void unicodeLiteralTest() {
+        String original = "String greet() { return \"Grüß Gott\"; }";
+        Abstractor.Result result = Abstractor.abstractCode(Parser.Granularity.METHOD, original, Set.of());
+        Assertions.assertEquals("TYPE_1 METHOD_1 ( ) { return STRING_1 ; }", result.getAbstracted());
+        Assertions.assertEquals("STRING_1", result.getMapping().get("\"Grüß Gott\""));
+    }
+
+    @Test
+    void streamingOutputTest() {
+        String original =
+                "@Override\n" +
+                "public String toString() {\n" +
+                "    return \"Grüß \" + name;\n" +
+                "}\n";
+        Abstractor abstractor = Abstractor.builder().granularity(Parser.Granularity.METHOD).build();
+        Abstractor.Result expected = abstractor.abstractCode(original);
+
+        StringWriter writer = new StringWriter();
+        Map<String, String> mapping = abstractor.abstractCode(original, writer);
+        Assertions.assertEquals(expected.getAbstracted(), writer.toString());
+        Assertions.assertEquals(expected.getMapping(), mapping);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        abstractor.abstractCode(original, Channels.newChannel(bytes));
+        Assertions.assertEquals(expected.toString(), bytes.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void encodingTest() throws Exception {
+        String original =
+                "public static void main(String[] args) {\n" +
+                "    System.out.println(\"Hello, World!\");\n" +
+                "}\n";
+        Abstractor abstractor = Abstractor.builder().granularity(Parser.Granularity.METHOD).build();
+        String expected = abstractor.abstractCode(original).getAbstracted();
+
+        TokenVocabulary vocabulary = TokenVocabulary.of(Set.of(), 10);
+        TokenVocabulary.Encoder encoder = vocabulary.encoder();
+        abstractor.abstractCode(original, encoder);
+        int[] ids = encoder.toArray();
+        Assertions.assertArrayEquals(vocabulary.encode(expected), ids);
+        Assertions.assertEquals(expected, vocabulary.decode(ids));
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (SequenceWriter writer = new SequenceWriter(bytes)) {
+            writer.write(ids);
+            writer.write(encoder.asBuffer());
+        }
+        try (SequenceReader reader = new SequenceReader(new ByteArrayInputStream(bytes.toByteArray()))) {
+            Assertions.assertArrayEquals(ids, reader.read());
+            Assertions.assertArrayEquals(ids, reader.read());
+            Assertions.assertNull(reader.read());
+        }
+    }
+
+    @Test
+    void methodExtractionTest() {
+        String original =
+                "public class Counter {\n" +
+                "    private int count;\n" +
+                "    public Counter(int start) { count = start; }\n" +
+                "    @Override\n" +
+                "    public String toString() { return \"Counter: \" + count; }\n" +
+                "    public void add(int amount) { count += amount; log(\"add\"); }\n" +
+                "}\n";
+        Abstractor abstractor = Abstractor.builder().build();
+        Abstractor methods = abstractor.toBuilder().granularity(Parser.Granularity.METHOD).build();
+
+        List<Abstractor.MethodResult> results = abstractor.abstractMethods(original);
+        Assertions.assertEquals(2, results.size());
+        Assertions.assertEquals("toString()", results.get(0).getSignature());
+        Assertions.assertEquals(4, results.get(0).getRange().begin.line);
+        Assertions.assertEquals(5, results.get(0).getRange().end.line);
+        Assertions.assertEquals("add(int)", results.get(1).getSignature());
+
+        String[] lines = original.split("\n");
+        Abstractor.Result expected = methods.abstractCode(lines[3] + "\n" + lines[4]);
+        Assertions.assertEquals(expected.getAbstracted(), results.get(0).getAbstracted());
+        Assertions.assertEquals(expected.getMapping(), results.get(0).getMapping());
+        expected = methods.abstractCode(lines[5]);
+        Assertions.assertEquals(expected.getAbstracted(), results.get(1).getAbstracted());
+        Assertions.assertEquals(expected.getMapping(), results.get(1).getMapping());
+
+        results = abstractor.abstractMethods(original, true);
+        Assertions.assertEquals(3, results.size());
+        Assertions.assertEquals("Counter(int)", results.get(0).getSignature());
+        Assertions.assertEquals("public VAR_1 ( int VAR_2 ) { VAR_3 = VAR_2 ; }", results.get(0).getAbstracted());
+    }
+
+    @Test
+    void cacheTest() throws Exception {
+        String original =
+                "public static void main(String[] args) {\n" +
+                "    System.out.println(\"Hello, World!\");\n" +
+                "}\n";
+        Abstractor.Result expected = Abstractor.builder()
+                .granularity(Parser.Granularity.METHOD)
+                .build()
+                .abstractCode(original);
+
+        Path directory = Files.createTempDirectory("src2abs");
+        try (ResultCache cache = ResultCache.builder().capacity(1).directory(directory).build()) {
+            Abstractor abstractor = Abstractor.builder()
+                    .granularity(Parser.Granularity.METHOD)
+                    .cache(cache)
+                    .build();
+            Assertions.assertEquals(expected.getAbstracted(), abstractor.abstractCode(original).getAbstracted());
+            Abstractor.Result cached = abstractor.abstractCode(original);
+            Assertions.assertEquals(expected.getAbstracted(), cached.getAbstracted());
+            Assertions.assertEquals(expected.getMapping(), cached.getMapping());
+            Assertions.assertEquals(1, cache.getHits());
+            Assertions.assertEquals(1, cache.getMisses());
+
+            Abstractor other = abstractor.toBuilder().idioms(Set.of("String")).build();
+            Assertions.assertNotEquals(expected.getAbstracted(), other.abstractCode(original).getAbstracted());
+            Assertions.assertEquals(2, cache.getMisses());
+        }
+
+        try (ResultCache cache = ResultCache.builder().directory(directory).build()) {
+            Abstractor abstractor = Abstractor.builder()
+                    .granularity(Parser.Granularity.METHOD)
+                    .cache(cache)
+                    .build();
+            Abstractor.Result cached = abstractor.abstractCode(original);
+            Assertions.assertEquals(expected.getAbstracted(), cached.getAbstracted());
+            Assertions.assertEquals(expected.getMapping(), cached.getMapping());
+            Assertions.assertEquals(1, cache.getHits());
+        }
+    }
+
+    @Test
+    void cacheFingerprintTest() throws Exception {
+        // JavaParser reads through unicode escapes, which the Lexer keeps as they are
+        String original = "class A { int \\u0061 = 1; }";
+        Abstractor antlr = Abstractor.builder().build();
+        Abstractor javaParser = antlr.toBuilder().lexing(Tokenizer.Lexing.JAVAPARSER).build();
+        Map<String, String> expected = antlr.abstractCode(original).getMapping();
+        Map<String, String> other = javaParser.abstractCode(original).getMapping();
+        Assertions.assertNotEquals(expected, other);
+
+        Path directory = Files.createTempDirectory("src2abs");
+        try (ResultCache cache = ResultCache.builder().directory(directory).build()) {
+            Assertions.assertEquals(expected, antlr.toBuilder().cache(cache).build().abstractCode(original).getMapping());
+            Assertions.assertEquals(other, javaParser.toBuilder().cache(cache).build().abstractCode(original).getMapping());
+            Assertions.assertEquals(0, cache.getHits());
+            Assertions.assertEquals(2, cache.getMisses());
+        }
+
+        byte[] fingerprint = ResultCache.fingerprint(
+                Parser.Granularity.CLASS, Tokenizer.Lexing.ANTLR, Parser.Parsing.JAVAPARSER, new ParserConfiguration(), Set.of()
+        );
+        List<ParserConfiguration> configurations = List.of(
+                new ParserConfiguration().setLanguageLevel(ParserConfiguration.LanguageLevel.JAVA_17),
+                new ParserConfiguration().setLanguageLevel(ParserConfiguration.LanguageLevel.RAW),
+                new ParserConfiguration().setPreprocessUnicodeEscapes(true)
+        );
+        for (ParserConfiguration configuration: configurations) {
+            byte[] changed = ResultCache.fingerprint(
+                    Parser.Granularity.CLASS, Tokenizer.Lexing.ANTLR, Parser.Parsing.JAVAPARSER, configuration, Set.of()
+            );
+            Assertions.assertFalse(Arrays.equals(fingerprint, changed));
+        }
+    }
+
+    @Test
+    void metricsTest() {
+        String original =
+                "public static void main(String[] args) {\n" +
+                "    System.out.println(\"Hello, World!\");\n" +
+                "}\n";
+        Metrics metrics = new Metrics();
+        Abstractor abstractor = Abstractor.builder()
+                .granularity(Parser.Granularity.METHOD)
+                .listener(metrics)
+                .build();
+        Abstractor.Result expected = Abstractor.builder()
+                .granularity(Parser.Granularity.METHOD)
+                .build()
+                .abstractCode(original);
+        Assertions.assertEquals(expected.getAbstracted(), abstractor.abstractCode(original).getAbstracted());
+        Assertions.assertThrows(ParseProblemException.class, () -> abstractor.abstractCode("void broken( {"));
+
+        Assertions.assertEquals(2, metrics.getAbstractions());
+        Assertions.assertEquals(1, metrics.getFailures());
+        Assertions.assertEquals(1, metrics.getParseFailures());
+        Assertions.assertEquals(21, metrics.getTokens());
+        Assertions.assertEquals(1, metrics.getIdentifiers(Prefix.TYPE));
+        Assertions.assertEquals(2, metrics.getIdentifiers(Prefix.METHOD));
+        Assertions.assertEquals(3, metrics.getIdentifiers(Prefix.VAR));
+        Assertions.assertEquals(1, metrics.getIdentifiers(Prefix.STRING));
+        Assertions.assertEquals(2, metrics.getLatency(Measurement.Stage.PARSE).getCount());
+        Assertions.assertEquals(1, metrics.getLatency(Measurement.Stage.LEX).getCount());
+        Assertions.assertEquals(1, metrics.getLatency(Measurement.Stage.TOKENIZE).getCount());
+        Assertions.assertEquals(2, metrics.getLatency(Measurement.Stage.TOTAL).getCount());
+    }
+
+    @Test
+    void guardsTest() {
+        String original =
+                "public static void main(String[] args) {\n" +
+                "    System.out.println(\"Hello, World!\");\n" +
+                "}\n";
+        Abstractor.AbstractorBuilder builder = Abstractor.builder().granularity(Parser.Granularity.METHOD);
+        Abstractor.Result expected = builder.build().abstractCode(original);
+        Abstractor.Result actual = builder.timeout(Duration.ofMinutes(1))
+                .maxLength(original.length())
+                .maxTokens(21)
+                .build()
+                .abstractCode(original);
+        Assertions.assertEquals(expected.getAbstracted(), actual.getAbstracted());
+
+        SkippedException length = Assertions.assertThrows(SkippedException.class, () ->
+                builder.maxLength(original.length() - 1).build().abstractCode(original)
+        );
+        Assertions.assertEquals(SkippedException.Reason.LENGTH, length.getReason());
+        SkippedException tokens = Assertions.assertThrows(SkippedException.class, () ->
+                builder.maxLength(null).maxTokens(20).build().abstractCode(original)
+        );
+        Assertions.assertEquals(SkippedException.Reason.TOKENS, tokens.getReason());
+        SkippedException deadline = Assertions.assertThrows(SkippedException.class, () ->
+                builder.maxTokens(null).timeout(Duration.ofNanos(1)).build().abstractCode(original)
+        );
+        Assertions.assertEquals(SkippedException.Reason.DEADLINE, deadline.getReason());
+    }
+
+    @Test
+    void heuristicTest() {
+        String original =
+                "public static List<String> names(Map<String, Integer> ages) {\n" +
+                "    List<String> names = new ArrayList<>(ages.keySet());\n" +
+                "    Collections.sort(names, Comparator.reverseOrder());\n" +
+                "    return (List<String>) names;\n" +
+                "}\n";
+        Abstractor.AbstractorBuilder builder = Abstractor.builder().granularity(Parser.Granularity.METHOD);
+        Abstractor.Result expected = builder.build().abstractCode(original);
+        Abstractor.Result actual = builder.parsing(Parser.Parsing.HEURISTIC).build().abstractCode(original);
+        Assertions.assertEquals(expected.getAbstracted(), actual.getAbstracted());
+        Assertions.assertEquals(expected.getMapping(), actual.getMapping());
+
+        String snippet = "Foo foo = new Foo(bar); foo.run(bar) +";
+        Assertions.assertThrows(ParseProblemException.class, () -> builder.parsing(null).build().abstractCode(snippet));
+        Abstractor.Result fallback = builder.parsing(Parser.Parsing.FALLBACK).build().abstractCode(snippet);
+        Assertions.assertEquals("TYPE_1 VAR_1 = new TYPE_1 ( VAR_2 ) ; VAR_1 . METHOD_1 ( VAR_2 ) +", fallback.getAbstracted());
+
+        // snippets may end with a qualified name, which valid code never does
+        for (Parser.Granularity granularity: Parser.Granularity.values()) {
+            Abstractor.AbstractorBuilder heuristic = Abstractor.builder().granularity(granularity);
+            for (Parser.Parsing parsing: new Parser.Parsing[] {Parser.Parsing.HEURISTIC, Parser.Parsing.FALLBACK}) {
+                Abstractor abstractor = heuristic.parsing(parsing).build();
+                Assertions.assertEquals("VAR_1 . VAR_2", abstractor.abstractCode("x.y").getAbstracted());
+                Assertions.assertEquals(
+                        "METHOD_1 ( ) ; VAR_1 . VAR_2 . VAR_3 . VAR_4",
+                        abstractor.abstractCode("foo(); a.b.c.d").getAbstracted()
+                );
+                Assertions.assertEquals("VAR_1", abstractor.abstractCode("x").getAbstracted());
+            }
+        }
+    }
+
+    @Test
+    void idiomMiningTest() throws IOException {
+        Abstractor abstractor = Abstractor.builder().granularity(Parser.Granularity.METHOD).build();
+        IdiomMiner first = new IdiomMiner(2);
+        first.add(abstractor.abstractCode("void a(List<String> list) { list.add(\"x\"); list.add(\"y\"); }"));
+        IdiomMiner second = new IdiomMiner(2);
+        second.add(abstractor.abstractCode("void b(List<Integer> items) { items.add(1); items.size(); }"));
+        second.add(abstractor.abstractCode("void c(Set<String> set) { set.add(\"x\"); }"));
+        first.merge(second);
+
+        Assertions.assertEquals(List.of("List", "String"), first.getIdioms(Prefix.TYPE));
+        Assertions.assertEquals(List.of("add", "a"), first.getIdioms(Prefix.METHOD));
+        Assertions.assertEquals(List.of("\"x\"", "\"y\""), first.getIdioms(Prefix.STRING));
+        Assertions.assertEquals(4, first.estimate(Prefix.METHOD, "add"));
+        Assertions.assertEquals(3, first.estimate(Prefix.VAR, "list"));
+
+        // once the candidates are full, a name evicts the lowest of them as soon as it outranks it
+        IdiomMiner full = new IdiomMiner(1);
+        StringBuilder names = new StringBuilder("void m() { int v0");
+        for (int i = 1; i < 64; i++) names.append(", v").append(i);
+        full.add(abstractor.abstractCode(names.append("; }").toString()));
+        full.add(abstractor.abstractCode("void n() { int late; late++; }"));
+        Assertions.assertEquals(List.of("late"), full.getIdioms(Prefix.VAR));
+
+        // annotations are mined as they are spelled in idioms
+        IdiomMiner miner = new IdiomMiner(1);
+        for (int i = 0; i < 3; i++) miner.add(abstractor.abstractCode("@Override public void f() { g(); }"));
+        Assertions.assertEquals(List.of("@Override"), miner.getIdioms(Prefix.ANNOTATION));
+        Assertions.assertEquals(3, miner.estimate(Prefix.ANNOTATION, "@Override"));
+
+        // the written idioms keep the annotation, without making idioms of names spelled the same
+        Path idioms = Files.createTempFile("idioms", ".txt");
+        try {
+            miner.write(idioms);
+            Assertions.assertTrue(Files.readAllLines(idioms).contains("@Override"));
+            Assertions.assertFalse(Files.readAllLines(idioms).contains("Override"));
+            Abstractor mined = abstractor.toBuilder().idioms(Set.copyOf(Files.readAllLines(idioms))).build();
+            Assertions.assertEquals(
+                    "@Override public void f ( ) { METHOD_1 ( ) ; }",
+                    mined.abstractCode("@Override public void f() { g(); }").getAbstracted()
+            );
+            Assertions.assertEquals(
+                    "void METHOD_1 ( ) { TYPE_1 VAR_1 = null ; }",
+                    mined.abstractCode("void h() { Override o = null; }").getAbstracted()
+            );
+        } finally {
+            Files.delete(idioms);
+        }
+    }
+
+    @Test
+    void lexerCacheTest() throws Exception {
+        List<String> inputs = List.of(
+                "int x = 0x1F + 0b101 + 07 + 1_000L; double d = 1.5e-3 + .5f;",
+                "String s = \"text\\n\" + 'c' + '\\u0041'; boolean b = s != null && !s.isEmpty();",
+                "class A<T extends B<? super T>> { @Override public int hashCode() { return x >>>= 2; } }",
+                "for (int i = 0; i < n; i++) { if (a <= b || a >= b) { continue; } else { a %= b; } }"
+        );
+        List<String> expected = new ArrayList<>();
+        for (String input: inputs) expected.add(Tokenizer.readTokens(input).toString());
+
+        LexerCache.clear();
+        Assertions.assertEquals(0, LexerCache.size());
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<String>> futures = new ArrayList<>();
+            for (int i = 0; i < 16; i++) {
+                String input = inputs.get(i % inputs.size());
+                futures.add(executor.submit(() -> Tokenizer.readTokens(input).toString()));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                Assertions.assertEquals(expected.get(i % inputs.size()), futures.get(i).get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        LexerCache.warmUp();
+        int size = LexerCache.size();
+        Path snapshot = Files.createTempFile("lexer", ".txt");
+        try {
+            Assertions.assertTrue(LexerCache.snapshot(snapshot) > 0);
+            LexerCache.clear();
+            LexerCache.restore(snapshot);
+            Assertions.assertTrue(LexerCache.size() >= size);
+            for (int i = 0; i < inputs.size(); i++) {
+                Assertions.assertEquals(expected.get(i), Tokenizer.readTokens(inputs.get(i)).toString());
+            }
+        } finally {
+            Files.delete(snapshot);
+        }
+    }
+
+    @Test
+    void versionsTest() {
+        String before = "int inc(int a) { return a + 1; }";
+        String after = "int inc(int a, Integer b) { return a + b.intValue() + 1; }";
+        Abstractor abstractor = Abstractor.builder().granularity(Parser.Granularity.METHOD).build();
+        Abstractor.VersionsResult pair = abstractor.abstractPair(before, after);
+        Abstractor.Result single = abstractor.abstractCode(before);
+        Assertions.assertEquals(single.getAbstracted(), pair.getAbstracted(0));
+        Assertions.assertEquals(
+                "int METHOD_1 ( int VAR_1 , TYPE_1 VAR_2 ) { return VAR_1 + VAR_2 . METHOD_2 ( ) + INT_1 ; }",
+                pair.getAbstracted(1)
+        );
+        Assertions.assertEquals(
+                Map.of("Integer", "TYPE_1", "inc", "METHOD_1", "intValue", "METHOD_2", "a", "VAR_1", "b", "VAR_2", "1", "INT_1"),
+                pair.getMapping()
+        );
+        Assertions.assertThrows(ParseProblemException.class, () -> abstractor.abstractPair(before, "int inc(int a) {"));
+    }
+
+    @Test
+    void versionsReclassificationTest() {
+        // Foo is a variable before, and a type after
+        String before = "void f() { x = Foo; }";
+        String after = "void f() { Foo y = null; }";
+        Abstractor abstractor = Abstractor.builder().granularity(Parser.Granularity.METHOD).build();
+        Abstractor.VersionsResult pair = abstractor.abstractPair(before, after);
+        Assertions.assertEquals("void METHOD_1 ( ) { VAR_1 = VAR_2 ; }", abstractor.abstractCode(before).getAbstracted());
+        Assertions.assertEquals("void METHOD_1 ( ) { VAR_1 = VAR_2 ; }", pair.getAbstracted(0));
+        Assertions.assertEquals("void METHOD_1 ( ) { TYPE_1 VAR_3 = null ; }", pair.getAbstracted(1));
+        Deabstractor deabstractor = pair.deabstractor();
+        Assertions.assertEquals("void f ( ) { x = Foo ; }", deabstractor.deabstract(pair.getAbstracted(0)));
+        Assertions.assertEquals("void f ( ) { Foo y = null ; }", deabstractor.deabstract(pair.getAbstracted(1)));
+
+        // the other way around, the type before stays one
+        pair = abstractor.abstractPair(after, before);
+        Assertions.assertEquals(abstractor.abstractCode(after).getAbstracted(), pair.getAbstracted(0));
+        Assertions.assertEquals("void METHOD_1 ( ) { VAR_2 = VAR_3 ; }", pair.getAbstracted(1));
+    }
+
+    @Test
+    void deabstractionTest() {
+        String original = "import a.Foo; class B { @Deprecated Foo foo = new Foo(\"a b\", 12); }";
+        Abstractor.Result result = Abstractor.builder().build().abstractCode(original);
+        String expected = "import a . Foo ; class B { @Deprecated Foo foo = new Foo ( \"a b\" , 12 ) ; }";
+        Assertions.assertEquals(expected, result.deabstractor().deabstract(result.getAbstracted()));
+        // Foo is both a variable, in the import, and a type, of which the mapping only has the former
+        Deabstractor lossy = new Deabstractor(result.getMapping());
+        Assertions.assertFalse(lossy.isMapped(result.getAbstracted()));
+        Assertions.assertEquals("Foo", lossy.original("VAR_2"));
+        Assertions.assertNull(lossy.original("TYPE_1"));
+
+        Map<String, String> mapping = Map.of("a", "VAR_1", "b", "VAR_12", "f", "METHOD_1", "0", "INT_1");
+        Deabstractor deabstractor = new Deabstractor(mapping);
+        Assertions.assertEquals(
+                List.of("f ( a ,  b )\n", "a = b + 0 ;", "VAR_1x = VAR_2 + INT_01 ;"),
+                deabstractor.deabstract(List.of("METHOD_1 ( VAR_1 ,  VAR_12 )\n", "VAR_1 = VAR_12 + INT_1 ;", "VAR_1x = VAR_2 + INT_01 ;"))
+        );
+        Assertions.assertTrue(deabstractor.isMapped("VAR_1 = VAR_12 + INT_1 + VAR_1x ;"));
+        Assertions.assertFalse(deabstractor.isMapped("VAR_1 = VAR_2 ;"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new Deabstractor(Map.of("a", "VAR")));
+    }
+
+    @Test
+    void binaryMappingTest() throws Exception {
+        Abstractor abstractor = Abstractor.builder().build();
+        List<Abstractor.Result> results = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            results.add(abstractor.abstractCode("class A" + i + " { String s = \"a, b\"; Foo f = Foo.of(" + i + ", \"\u00e9\"); }"));
+        }
+        Path file = Files.createTempFile("mappings", ".bin");
+        try {
+            try (MappingWriter writer = new MappingWriter(file)) {
+                for (Abstractor.Result result: results) writer.write(result);
+            }
+            MappingReader reader = new MappingReader(file);
+            Assertions.assertEquals(results.size(), reader.size());
+            for (int i: new int[]{99, 0, 33, 31, 32, 64, 1}) {
+                Abstractor.Result result = results.get(i);
+                Assertions.assertEquals(new ArrayList<>(result.getMapping().entrySet()), new ArrayList<>(reader.mapping(i).entrySet()));
+                Assertions.assertEquals(
+                        result.deabstractor().deabstract(result.getAbstracted()),
+                        reader.deabstractor(i).deabstract(result.getAbstracted())
+                );
+            }
+            Assertions.assertEquals("STRING_1", reader.mapping(5).get("\"a, b\""));
+            Assertions.assertThrows(IndexOutOfBoundsException.class, () -> reader.mapping(100));
+
+            Path source = Files.createTempFile("source", ".java");
+            Path output = Files.createTempFile("output", ".txt");
+            Path map = output.resolveSibling(output.getFileName() + ".map");
+            try {
+                Files.writeString(source, "class B { String s = \"a, b\"; }");
+                abstractor.toBuilder().mappingFormat(MappingWriter.Format.BINARY).build().abstractCode(source, output);
+                MappingReader single = new MappingReader(map);
+                Assertions.assertEquals(1, single.size());
+                Assertions.assertEquals(Map.of("String", "TYPE_1", "B", "VAR_1", "s", "VAR_2", "\"a, b\"", "STRING_1"), single.mapping(0));
+                Assertions.assertThrows(IOException.class, () -> new MappingReader(output));
+            } finally {
+                Files.delete(source);
+                Files.delete(output);
+                Files.deleteIfExists(map);
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    void corruptMappingTest() throws Exception {
+        int var = Prefix.VAR.ordinal();
+        Path file = Files.createTempFile("mappings", ".bin");
+        try {
+            Files.write(file, mappingFile(new int[] {0x01, var, 0x01, 0x00}, new int[] {0x01, 'x'}));
+            Assertions.assertEquals(Map.of("x", "VAR_1"), new MappingReader(file).mapping(0));
+
+            // five-byte integers that set the sign bit, or that do not end, are corrupt rather than negative
+            int[][][] corrupt = {
+                    {{0x01, 0xFF, 0xFF, 0xFF, 0xFF, 0x0F, 0x01, 0x00}, {0x01, 'x'}},
+                    {{0x01, var, 0x01, 0xFF, 0xFF, 0xFF, 0xFF, 0x0F}, {0x01, 'x'}},
+                    {{0x01, var, 0x01, 0x00}, {0xFF, 0xFF, 0xFF, 0xFF, 0x0F, 'x'}},
+                    {{0x01, var, 0x01, 0x00}, {0x80, 0x80, 0x80, 0x80, 0x80, 0x01, 'x'}},
+                    {{0x01, var, 0x01, 0x00}, {0xFF, 0xFF, 0xFF, 0xFF, 0x07, 'x'}},
+                    {{0x01, var, 0x01, 0x00}, {0x05, 'x'}},
+            };
+            for (int[][] records: corrupt) {
+                Files.write(file, mappingFile(records[0], records[1]));
+                MappingReader reader = new MappingReader(file);
+                IllegalStateException ex = Assertions.assertThrows(IllegalStateException.class, () -> reader.mapping(0));
+                Assertions.assertEquals("Corrupt mapping 0", ex.getMessage());
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    // a file of one mapping and one symbol, each given as its bytes
+    private static byte[] mappingFile(int[] mapping, int[] symbol) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.write(MappingWriter.MAGIC);
+        out.write(MappingWriter.VERSION);
+        long mappings = out.size();
+        for (int b: mapping) out.write(b);
+        long symbols = out.size();
+        for (int b: symbol) out.write(b);
+        out.writeLong(mappings);
+        out.writeLong(symbols);
+        out.writeLong(1);
+        out.writeLong(1);
+        return bytes.toByteArray();
+    }
+
+    @Test
+    void symbolTableTest() throws Exception {
+        SymbolTable symbols = new SymbolTable();
+        Abstractor abstractor = Abstractor.builder().granularity(Parser.Granularity.METHOD).symbols(symbols).build();
+        String first = "int f(List<String> items) { return items.size() + \"a, b\".length(); }";
+        String second = "int g(List<String> items) { return items.size() * 2; }";
+        Abstractor.Result a = abstractor.abstractCode(first);
+        Abstractor.Result b = abstractor.abstractCode(second);
+        Assertions.assertEquals(Abstractor.builder().granularity(Parser.Granularity.METHOD).build().abstractCode(first).getMapping(), a.getMapping());
+        String items = a.getMapping().keySet().stream().filter("items"::equals).findFirst().orElseThrow();
+        Assertions.assertSame(items, b.getMapping().keySet().stream().filter("items"::equals).findFirst().orElseThrow());
+        Assertions.assertSame(items, symbols.symbol(symbols.id("items")));
+        Assertions.assertSame(items, symbols.canonical(new String("items")));
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<int[]>> futures = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                futures.add(executor.submit(() -> {
+                    int[] ids = new int[1000];
+                    for (int i = 0; i < ids.length; i++) ids[i] = symbols.id("s" + i);
+                    return ids;
+                }));
+            }
+            int[] expected = futures.get(0).get();
+            for (Future<int[]> future: futures) Assertions.assertArrayEquals(expected, future.get());
+            for (int i = 0; i < expected.length; i++) Assertions.assertEquals("s" + i, symbols.symbol(expected[i]));
+        } finally {
+            executor.shutdown();
+        }
+
+        Path file = Files.createTempFile("mappings", ".bin");
+        try {
+            try (MappingWriter writer = new MappingWriter(file)) {
+                for (int i = 0; i < 50; i++) {
+                    writer.write(a);
+                    writer.write(b);
+                }
+            }
+            // the dictionary holds each string once, however many mappings it occurs in
+            String bytes = new String(Files.readAllBytes(file), StandardCharsets.ISO_8859_1);
+            Assertions.assertEquals(bytes.indexOf("\"a, b\""), bytes.lastIndexOf("\"a, b\""));
+            MappingReader reader = new MappingReader(file);
+            Assertions.assertEquals(100, reader.size());
+            Assertions.assertEquals(a.getMapping(), reader.mapping(98));
+            Assertions.assertEquals(b.getMapping(), reader.mapping(99));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    void splitTest() {
+        Abstractor abstractor = Abstractor.builder().build();
+        Abstractor split = abstractor.toBuilder().splitThreshold(1).build();
+        String code = "package p;\n" +
+                "import java.util.*;\n" +
+                "interface Shape { double area(); default String name() { return \"shape\"; } }\n" +
+                "@SuppressWarnings(\"unchecked\")\n" +
+                "public class Main<T extends Comparable<T>> extends Base implements Shape {\n" +
+                "    private static final int[] SIZES = { 1, 2, 3 };\n" +
+                "    private final Map<String, List<T>> items = new HashMap<>() {{ put(\"a\", null); }};\n" +
+                "    private final Runnable task = new Runnable() { public void run() { count++; } };\n" +
+                "    int count, total = SIZES.length;\n" +
+                "    static { System.out.println(SIZES[0]); }\n" +
+                "    { count = 0; };\n" +
+                "    public Main(int count) { super(count); this.count = count; }\n" +
+                "    public double area() { return count * Math.PI; }\n" +
+                "    enum Kind { SMALL, LARGE; Kind next() { return values()[(ordinal() + 1) % 2]; } }\n" +
+                "    static class Node<T> { T value; Node<T> next; }\n" +
+                "    <R> R map(java.util.function.Function<T, R> f, T t) { return f.apply(t); }\n" +
+                "}\n" +
+                "enum Color { RED, GREEN }\n";
+        Abstractor.Result expected = abstractor.abstractCode(code);
+        Abstractor.Result actual = split.abstractCode(code);
+        Assertions.assertEquals(expected.getAbstracted(), actual.getAbstracted());
+        Assertions.assertEquals(expected.getMapping(), actual.getMapping());
+        // the unit is split, rather than parsed at once after all
+        String cleaned = Cleaner.clean(code);
+        Assertions.assertNotNull(Splitter.parse(
+                cleaned, Tokenizer.readTokens(cleaned), new ParserConfiguration(), Guard.NONE, ForkJoinPool.commonPool()
+        ));
+        // invalid units are parsed again at once, which reports the problems
+        String invalid = "class A { void f() { int x = ; } int y; }";
+        Assertions.assertNull(Splitter.parse(
+                invalid, Tokenizer.readTokens(invalid), new ParserConfiguration(), Guard.NONE, ForkJoinPool.commonPool()
+        ));
+        Assertions.assertThrows(ParseProblemException.class, () -> abstractor.abstractCode(invalid));
+        Assertions.assertThrows(ParseProblemException.class, () -> split.abstractCode(invalid));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> Abstractor.builder().splitThreshold(-1).build());
+    }
+}
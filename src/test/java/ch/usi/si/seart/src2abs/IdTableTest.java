@@ -0,0 +1,113 @@
+package ch.usi.si.seart.src2abs;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+class IdTableTest {
+
+    @Test
+    void insertionOrderTest() {
+        IdTable table = new IdTable();
+        Assertions.assertEquals(0, table.size());
+        Assertions.assertEquals(0, table.get("a"));
+        Assertions.assertEquals(1, table.add("b"));
+        Assertions.assertEquals(2, table.add("a"));
+        Assertions.assertEquals(1, table.add("b"));
+        Assertions.assertEquals(3, table.add("c"));
+        Assertions.assertEquals(3, table.size());
+        Assertions.assertEquals("b", table.key(1));
+        Assertions.assertEquals("a", table.key(2));
+        Assertions.assertEquals("c", table.key(3));
+        Assertions.assertTrue(table.contains("a"));
+        Assertions.assertFalse(table.contains("d"));
+        // equal keys are found whatever their instance
+        Assertions.assertEquals(2, table.get(new String("a")));
+    }
+
+    @Test
+    void collisionTest() {
+        // all three strings have the same hash code, and probe the same slots
+        IdTable table = new IdTable();
+        Assertions.assertEquals("Aa".hashCode(), "BB".hashCode());
+        Assertions.assertEquals("AaAa".hashCode(), "BBBB".hashCode());
+        Assertions.assertEquals(1, table.add("Aa"));
+        Assertions.assertEquals(2, table.add("BB"));
+        Assertions.assertEquals(3, table.add("AaAa"));
+        Assertions.assertEquals(4, table.add("BBBB"));
+        Assertions.assertEquals(2, table.get("BB"));
+        Assertions.assertEquals(4, table.get("BBBB"));
+        Assertions.assertFalse(table.contains("AaBB"));
+    }
+
+    @Test
+    void resizeTest() {
+        IdTable table = new IdTable();
+        int count = 10_000;
+        for (int i = 0; i < count; i++) {
+            Assertions.assertEquals(i + 1, table.add("key" + i));
+        }
+        Assertions.assertEquals(count, table.size());
+        for (int i = 0; i < count; i++) {
+            Assertions.assertEquals(i + 1, table.get("key" + i));
+            Assertions.assertEquals("key" + i, table.key(i + 1));
+        }
+        // adding again after the table has grown does not renumber anything
+        for (int i = count - 1; i >= 0; i--) {
+            Assertions.assertEquals(i + 1, table.add("key" + i));
+        }
+        Assertions.assertEquals(count, table.size());
+        Assertions.assertFalse(table.contains("key" + count));
+    }
+
+    @Test
+    void prefixIdTest() {
+        Assertions.assertEquals("VAR_1", Prefix.VAR.id(1));
+        Assertions.assertSame(Prefix.VAR.id(1), Prefix.VAR.id(1));
+        Assertions.assertEquals("STRING_65535", Prefix.STRING.id(65535));
+        Assertions.assertSame(Prefix.STRING.id(65535), Prefix.STRING.id(65535));
+        // IDs past the cache are built on request rather than cached
+        Assertions.assertEquals("TYPE_65536", Prefix.TYPE.id(65536));
+        Assertions.assertEquals("TYPE_1000000", Prefix.TYPE.id(1_000_000));
+        Assertions.assertEquals("TYPE_" + Integer.MAX_VALUE, Prefix.TYPE.id(Integer.MAX_VALUE));
+        Assertions.assertEquals("TYPE_2", Prefix.TYPE.id(2));
+    }
+
+    @Test
+    void concurrentPrefixIdTest() throws Exception {
+        int threads = 8;
+        int count = 70_000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<String[]>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int offset = t;
+                futures.add(executor.submit(() -> {
+                    // each thread grows the cache in steps of its own
+                    String[] ids = new String[count];
+                    for (int i = 1; i < count; i++) {
+                        int index = 1 + (i * (offset + 1)) % (count - 1);
+                        ids[index] = Prefix.METHOD.id(index);
+                    }
+                    return ids;
+                }));
+            }
+            String[] first = futures.get(0).get();
+            for (Future<String[]> future: futures) {
+                String[] ids = future.get();
+                for (int i = 1; i < count; i++) {
+                    if (ids[i] == null) continue;
+                    Assertions.assertEquals("METHOD_" + i, ids[i]);
+                    if (i < 65536 && first[i] != null) Assertions.assertSame(first[i], ids[i]);
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package ch.usi.si.seart.src2abs;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class JsonTest {
+
+    @Test
+    void escapesTest() {
+        Assertions.assertEquals("a\"b\\c/d", Json.field("{\"code\":\"a\\\"b\\\\c\\/d\"}", "code"));
+        Assertions.assertEquals("\b\f\n\r\t", Json.field("{\"code\":\"\\b\\f\\n\\r\\t\"}", "code"));
+        Assertions.assertEquals("A\u00e9\uD83D\uDE00", Json.field("{\"code\":\"\\u0041\\u00E9\\ud83d\\ude00\"}", "code"));
+        Assertions.assertEquals("caf\u00e9", Json.field("{\"code\":\"caf\u00e9\"}", "code"));
+        for (String escape: new String[] {"\\u+041", "\\u-041", "\\u004", "\\u00g1", "\\u\uFF10\uFF10\uFF14\uFF11", "\\x", "\\"}) {
+            String record = "{\"code\":\"" + escape + "\"}";
+            Assertions.assertThrows(IllegalArgumentException.class, () -> Json.field(record, "code"), record);
+        }
+        StringBuilder quoted = new StringBuilder();
+        Json.quote("a\"b\\c\n\u0001", quoted);
+        Assertions.assertEquals("\"a\\\"b\\\\c\\n\\u0001\"", quoted.toString());
+    }
+
+    @Test
+    void malformedRecordsTest() {
+        String[] records = {
+                "",
+                "[]",
+                "\"code\"",
+                "{\"code\":\"x\"",
+                "{\"code\":\"x\"} {}",
+                "{\"code\" \"x\"}",
+                "{code:\"x\"}",
+                "{\"code\":\"x\",}",
+                "{\"code\":\"x\"\"a\":1}",
+                "{\"code\":\"x\nx\"}",
+                "{\"a\":tru,\"code\":\"x\"}",
+                "{\"a\":01,\"code\":\"x\"}",
+                "{\"a\":[1,],\"code\":\"x\"}",
+                "{\"a\":{\"b\"},\"code\":\"x\"}",
+                "{\"a\":[1}],\"code\":\"x\"}",
+        };
+        for (String record: records) {
+            Assertions.assertThrows(IllegalArgumentException.class, () -> Json.field(record, "code"), record);
+        }
+        // the field must be a string
+        Assertions.assertThrows(IllegalArgumentException.class, () -> Json.field("{\"code\":1}", "code"));
+    }
+
+    @Test
+    void missingFieldTest() {
+        Assertions.assertNull(Json.field("{}", "code"));
+        Assertions.assertNull(Json.field(" { } ", "code"));
+        Assertions.assertNull(Json.field("{\"source\":\"class A {}\"}", "code"));
+        Assertions.assertNull(Json.field("{\"a\":{\"code\":\"nested\"}}", "code"));
+        Assertions.assertEquals("first", Json.field("{\"code\":\"first\",\"code\":\"second\"}", "code"));
+    }
+
+    @Test
+    void nestingTest() {
+        String record = " {\"a\" : [1, -2.5e3, true, false, null, {\"b\": [[], {}, \"]}\"]}] , \"code\" : \"x\" } ";
+        Assertions.assertEquals("x", Json.field(record, "code"));
+        Assertions.assertEquals("x", Json.field("{\"a\":" + "[".repeat(999) + "]".repeat(999) + ",\"code\":\"x\"}", "code"));
+        // nesting is bounded by a limit rather than by the stack
+        for (int depth: new int[] {1001, 200_000}) {
+            String nested = "{\"x\":" + "[".repeat(depth) + "]".repeat(depth) + ",\"code\":\"class B {}\"}";
+            IllegalArgumentException ex = Assertions.assertThrows(IllegalArgumentException.class, () -> Json.field(nested, "code"));
+            Assertions.assertTrue(ex.getMessage().startsWith("Nesting deeper than"), ex.getMessage());
+        }
+        String unbalanced = "{\"x\":" + "[".repeat(10) + "]".repeat(9) + ",\"code\":\"x\"}";
+        Assertions.assertThrows(IllegalArgumentException.class, () -> Json.field(unbalanced, "code"));
+    }
+}
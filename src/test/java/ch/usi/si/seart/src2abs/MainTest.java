@@ -0,0 +1,146 @@
+package ch.usi.si.seart.src2abs;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import picocli.CommandLine;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+class MainTest {
+
+    // deep enough to exhaust the stack of JavaParser, but not that of the lexer
+    private static final String NESTED = "class C { int x = " + "(".repeat(20000) + "1" + ")".repeat(20000) + "; }";
+
+    @Test
+    void batchTest() throws IOException {
+        Path directory = Files.createTempDirectory("batch");
+        try {
+            Path input = Files.createDirectories(directory.resolve("input"));
+            Path output = directory.resolve("output");
+            Files.writeString(input.resolve("A.java"), "class A { int a() { return 1; } }");
+            Files.writeString(input.resolve("B.java"), "class B { int b( }");
+            Files.writeString(input.resolve("C.java"), NESTED);
+            Files.writeString(input.resolve("D.java"), "class D { String d = \"d\"; }");
+
+            StringWriter err = new StringWriter();
+            int code = execute(err, input.toString(), "-o", output.toString(), "-t", "2");
+            Assertions.assertEquals(1, code);
+            String log = err.toString();
+            Assertions.assertTrue(log.contains("B.java: could not be parsed"), log);
+            Assertions.assertTrue(log.contains("C.java: too deeply nested to be abstracted"), log);
+            Assertions.assertTrue(log.contains("Abstracted 4 file(s): 2 succeeded, 2 failed"), log);
+            Assertions.assertEquals("class VAR_1 { int METHOD_1 ( ) { return INT_1 ; } }", Files.readString(output.resolve("A.java")).strip());
+            Assertions.assertTrue(Files.exists(output.resolve("D.java.map")));
+            // failed inputs leave nothing behind
+            Assertions.assertFalse(Files.exists(output.resolve("B.java")));
+            Assertions.assertFalse(Files.exists(output.resolve("C.java")));
+            Assertions.assertFalse(Files.exists(output.resolve("C.java.map")));
+        } finally {
+            delete(directory);
+        }
+    }
+
+    @Test
+    void jsonlTest() throws IOException {
+        Path directory = Files.createTempDirectory("jsonl");
+        try {
+            Path input = directory.resolve("input.jsonl");
+            Path output = directory.resolve("output.jsonl");
+            String nested = "[".repeat(200_000) + "]".repeat(200_000);
+            List<String> records = new ArrayList<>();
+            for (int i = 0; i < 40; i++) records.add("{\"id\":" + i + ",\"code\":\"class A" + i + " { int a() { return " + i + "; } }\"}");
+            records.add(5, "{ }");
+            records.add(10, "{\"id\":\"nested\",\"x\":" + nested + ",\"code\":\"class B {}\"}");
+            records.add(15, "{\"id\":\"deep\",\"code\":\"" + NESTED + "\"}");
+            records.add(20, "{\"id\":\"malformed\",\"code\":\"\\u+041\"}");
+            records.add(25, "");
+            records.add(30, "{\"id\":\"number\",\"code\":7}");
+            Files.write(input, records);
+
+            StringWriter err = new StringWriter();
+            int code = execute(err, input.toString(), "--jsonl", "-o", output.toString(), "-t", "3");
+            Assertions.assertEquals(1, code);
+            Assertions.assertTrue(err.toString().contains("Abstracted 45 record(s): 40 succeeded, 5 failed"), err.toString());
+
+            List<String> lines = Files.readAllLines(output);
+            Assertions.assertEquals(45, lines.size());
+            // every line is well-formed, and the records are written in input order
+            for (String line: lines) Json.field(line, "code");
+            Assertions.assertEquals("{\"error\":\"Missing field 'code'\"}", lines.get(5));
+            Assertions.assertTrue(lines.get(10).startsWith("{\"error\":\"Malformed record: Nesting deeper than"), lines.get(10));
+            Assertions.assertTrue(lines.get(15).endsWith(",\"error\":\"Too deeply nested to be abstracted\"}"), lines.get(15));
+            Assertions.assertTrue(lines.get(20).startsWith("{\"error\":\"Malformed record: Invalid unicode escape"), lines.get(20));
+            Assertions.assertTrue(lines.get(29).startsWith("{\"error\":\"Malformed record: Field 'code' is not a string"), lines.get(29));
+            int next = 0;
+            for (String line: lines) {
+                if (line.contains("\"error\"")) continue;
+                Assertions.assertTrue(line.startsWith("{\"id\":" + next + ","), line);
+                Assertions.assertEquals("class VAR_1 { int METHOD_1 ( ) { return INT_1 ; } }", Json.field(line, "abstracted"));
+                next++;
+            }
+            Assertions.assertEquals(40, next);
+        } finally {
+            delete(directory);
+        }
+    }
+
+    @Test
+    void mineTest() throws IOException {
+        Path directory = Files.createTempDirectory("mine");
+        try {
+            Path input = Files.createDirectories(directory.resolve("input"));
+            Files.writeString(input.resolve("A.java"), "class A { int size() { return size; } }");
+            Files.writeString(input.resolve("B.java"), "class B { int b( }");
+            Files.writeString(input.resolve("C.java"), NESTED);
+            Files.writeString(input.resolve("D.java"), "class D { int size() { return size(); } }");
+            Path idioms = directory.resolve("idioms.txt");
+
+            StringWriter err = new StringWriter();
+            int code = execute(err, input.toString(), "--mine", "10", "-o", idioms.toString(), "-t", "2");
+            Assertions.assertEquals(1, code);
+            String log = err.toString();
+            Assertions.assertTrue(log.contains(input.resolve("B.java") + ": could not be parsed (1 problems)"), log);
+            Assertions.assertTrue(log.contains(input.resolve("C.java") + ": too deeply nested to be abstracted"), log);
+            Assertions.assertTrue(log.contains("Mined 4 input(s): 2 succeeded, 2 failed"), log);
+            Assertions.assertTrue(Files.readAllLines(idioms).contains("size"));
+
+            Path records = directory.resolve("input.jsonl");
+            Files.write(records, List.of(
+                    "{\"code\":\"class A { int size() { return size; } }\"}",
+                    "",
+                    "{\"source\":\"class B {}\"}",
+                    "{\"code\":\"class C {\"}"
+            ));
+            err = new StringWriter();
+            code = execute(err, records.toString(), "--jsonl", "--mine", "10", "-o", idioms.toString());
+            Assertions.assertEquals(1, code);
+            log = err.toString();
+            Assertions.assertTrue(log.contains("line 3: java.lang.IllegalArgumentException: Missing field 'code'"), log);
+            Assertions.assertTrue(log.contains("line 4: could not be parsed"), log);
+            Assertions.assertTrue(log.contains("Mined 3 input(s): 1 succeeded, 2 failed"), log);
+        } finally {
+            delete(directory);
+        }
+    }
+
+    static int execute(StringWriter err, String... args) {
+        return new CommandLine(new Main())
+                .setCaseInsensitiveEnumValuesAllowed(true)
+                .setErr(new PrintWriter(err))
+                .execute(args);
+    }
+
+    static void delete(Path directory) throws IOException {
+        try (Stream<Path> walk = Files.walk(directory)) {
+            for (Path path: (Iterable<Path>) walk.sorted(Comparator.reverseOrder())::iterator) Files.delete(path);
+        }
+    }
+}
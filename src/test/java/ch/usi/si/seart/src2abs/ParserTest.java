@@ -0,0 +1,117 @@
+package ch.usi.si.seart.src2abs;
+
+import com.github.javaparser.JavaParser;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+
+class ParserTest {
+
+    private static Parser parse(String code) {
+        Parser parser = new Parser(Parser.Granularity.CLASS, new JavaParser());
+        parser.parse(code);
+        return parser;
+    }
+
+    private static void assertContains(Set<String> actual, String... expected) {
+        for (String name: expected) Assertions.assertTrue(actual.contains(name), name + " missing from " + actual);
+    }
+
+    private static void assertLacks(Set<String> actual, String... unexpected) {
+        for (String name: unexpected) Assertions.assertFalse(actual.contains(name), name + " found in " + actual);
+    }
+
+    @Test
+    void genericTypesTest() {
+        Parser parser = parse(
+                "class A<T extends Comparable<? super T>> {\n" +
+                "    Map<String, List<Integer>> table;\n" +
+                "    Supplier<Set<Byte>> supplier;\n" +
+                "}"
+        );
+        assertContains(parser.getTypes(), "T", "Comparable", "Map", "String", "List", "Integer", "Supplier", "Set", "Byte");
+        assertLacks(parser.getTypes(), "A", "table", "supplier", "?", "super", "");
+    }
+
+    @Test
+    void arrayTypesTest() {
+        Parser parser = parse(
+                "class A {\n" +
+                "    Map<String, List<Integer>>[] tables;\n" +
+                "    int[][] matrix;\n" +
+                "    Holder<long[]> holder;\n" +
+                "    void f(String... args) {}\n" +
+                "}"
+        );
+        assertContains(parser.getTypes(), "Map", "String", "List", "Integer", "int", "Holder", "long", "void");
+        assertLacks(parser.getTypes(), "tables", "matrix", "holder", "args", "[]", "int[][]", "");
+    }
+
+    @Test
+    void wildcardTypesTest() {
+        Parser parser = parse(
+                "class A {\n" +
+                "    List<? extends Number> numbers;\n" +
+                "    Comparator<? super Long> comparator;\n" +
+                "    Class<?> type;\n" +
+                "}"
+        );
+        assertContains(parser.getTypes(), "List", "Number", "Comparator", "Long", "Class");
+        assertLacks(parser.getTypes(), "?", "extends", "super", "");
+    }
+
+    @Test
+    void scopedTypesTest() {
+        Parser parser = parse(
+                "class A {\n" +
+                "    java.util.List<Outer.Inner<String>> list;\n" +
+                "    void f() {\n" +
+                "        Collections.sort(list);\n" +
+                "        java.util.Objects.hash(list);\n" +
+                "        Map.Entry.comparingByKey();\n" +
+                "        list.size();\n" +
+                "    }\n" +
+                "}"
+        );
+        assertContains(
+                parser.getTypes(),
+                "java.util.List", "Outer.Inner", "Outer", "String", "Collections", "java.util.Objects", "Map.Entry"
+        );
+        assertLacks(parser.getTypes(), "list", "Inner", "List", "Objects");
+        assertContains(parser.getMethods(), "f", "sort", "hash", "comparingByKey", "size");
+    }
+
+    @Test
+    void annotatedTypesTest() {
+        Parser parser = parse(
+                "@Entity\n" +
+                "class A {\n" +
+                "    @NonNull String name;\n" +
+                "    List<@Size(max = 1) Deque<Long>> annotated;\n" +
+                "    @SuppressWarnings(\"unchecked\") void f(@Named(value = \"x\") Object o) {}\n" +
+                "}"
+        );
+        assertContains(parser.getTypes(), "String", "List", "Deque", "Long", "Object");
+        assertLacks(parser.getTypes(), "NonNull", "Size", "@NonNull String", "Named");
+        assertContains(parser.getAnnotations(), "Entity", "NonNull", "Size", "SuppressWarnings", "Named");
+        Assertions.assertEquals(5, parser.getAnnotations().size());
+    }
+
+    @Test
+    void methodReferencesTest() {
+        Parser parser = parse(
+                "class A {\n" +
+                "    void f(Function<String, Integer> g) {\n" +
+                "        Runnable r = this::run;\n" +
+                "        g.andThen(Objects::hashCode);\n" +
+                "        Supplier<Set<Byte>> s = HashSet<Byte>::new;\n" +
+                "        Function<String, String> h = String::trim;\n" +
+                "    }\n" +
+                "}"
+        );
+        Assertions.assertEquals(Set.of("f", "run", "andThen", "hashCode", "new", "trim"), parser.getMethods());
+        assertContains(parser.getTypes(), "Function", "String", "Integer", "Runnable", "Objects", "Supplier", "Set", "HashSet", "Byte");
+        assertLacks(parser.getTypes(), "g", "r", "s", "h", "run", "trim");
+    }
+}
@@ -0,0 +1,136 @@
+package ch.usi.si.seart.src2abs;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+class ServerTest {
+
+    private static final class Client implements AutoCloseable {
+
+        private final Socket socket;
+        private final DataInputStream in;
+        private final DataOutputStream out;
+
+        private Client(int port) throws IOException {
+            socket = new Socket(InetAddress.getLoopbackAddress(), port);
+            in = new DataInputStream(socket.getInputStream());
+            out = new DataOutputStream(socket.getOutputStream());
+        }
+
+        private void send(String request) throws IOException {
+            byte[] payload = request.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(payload.length);
+            out.write(payload);
+            out.flush();
+        }
+
+        private String receive() throws IOException {
+            byte[] payload = new byte[in.readInt()];
+            in.readFully(payload);
+            return new String(payload, StandardCharsets.UTF_8);
+        }
+
+        private String request(String request) throws IOException {
+            send(request);
+            return receive();
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+
+    private static String code(String code) {
+        StringBuilder builder = new StringBuilder("{\"code\":");
+        Json.quote(code, builder);
+        return builder.append('}').toString();
+    }
+
+    @Test
+    void serverTest() throws Exception {
+        Server server = new Server(Abstractor.builder().build(), 0, 2);
+        Thread thread = new Thread(() -> {
+            try {
+                server.serve(new PrintWriter(new StringWriter()));
+            } catch (IOException ignored) {
+            }
+        });
+        thread.start();
+        try (Client client = new Client(server.getPort())) {
+            String response = client.request(code("class A { int a() { return 1; } }"));
+            Assertions.assertEquals("class VAR_1 { int METHOD_1 ( ) { return INT_1 ; } }", Json.field(response, "abstracted"));
+            Assertions.assertTrue(response.contains("\"micros\":"), response);
+
+            // the granularity can be selected per request
+            response = client.request("{\"code\":\"int a() { return 1; }\",\"granularity\":\"method\"}");
+            Assertions.assertEquals("int METHOD_1 ( ) { return INT_1 ; }", Json.field(response, "abstracted"));
+            response = client.request("{\"code\":\"int a() { return 1; }\"}");
+            Assertions.assertTrue(Json.field(response, "error").startsWith("Could not be parsed"), response);
+            response = client.request("{\"code\":\"int a() { return 1; }\",\"granularity\":\"file\"}");
+            Assertions.assertTrue(Json.field(response, "error").startsWith("Malformed request"), response);
+
+            response = client.request("{\"source\":\"class A {}\"}");
+            Assertions.assertEquals("Missing field 'code'", Json.field(response, "error"));
+            response = client.request("{\"code\":");
+            Assertions.assertTrue(Json.field(response, "error").startsWith("Malformed request"), response);
+
+            // deeply nested requests are answered with an error, and the connection stays open
+            String nested = "class C { int x = " + "(".repeat(20000) + "1" + ")".repeat(20000) + "; }";
+            response = client.request(code(nested));
+            Assertions.assertEquals("Too deeply nested to be abstracted", Json.field(response, "error"));
+            response = client.request("{\"x\":" + "[".repeat(200_000) + "]".repeat(200_000) + ",\"code\":\"class B {}\"}");
+            Assertions.assertTrue(Json.field(response, "error").startsWith("Malformed request: Nesting deeper than"), response);
+            response = client.request(code("class B {}"));
+            Assertions.assertEquals("class VAR_1 { }", Json.field(response, "abstracted"));
+        }
+
+        // frames that are too large are rejected, and the connection is closed
+        try (Client client = new Client(server.getPort())) {
+            client.out.writeInt(Server.MAX_FRAME + 1);
+            client.out.flush();
+            Assertions.assertEquals("Invalid frame length: " + (Server.MAX_FRAME + 1), Json.field(client.receive(), "error"));
+            Assertions.assertThrows(EOFException.class, client::receive);
+        }
+
+        // concurrent connections are answered independently, each in the order of its requests
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int c = 0; c < 4; c++) {
+                int connection = c;
+                futures.add(executor.submit(() -> {
+                    try (Client client = new Client(server.getPort())) {
+                        for (int i = 0; i < 20; i++) client.send(code("class A { String s = \"" + connection + "-" + i + "\"; }"));
+                        for (int i = 0; i < 20; i++) {
+                            String response = client.receive();
+                            Assertions.assertEquals("class VAR_1 { TYPE_1 VAR_2 = STRING_1 ; }", Json.field(response, "abstracted"));
+                            Assertions.assertTrue(response.contains("\"\\\"" + connection + "-" + i + "\\\"\":\"STRING_1\""), response);
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future: futures) future.get();
+        } finally {
+            executor.shutdown();
+            server.close();
+            thread.join();
+        }
+    }
+}